@@ -1,34 +0,0 @@
-package bout2p1_ograines.chunksloader;
-
-import java.util.Objects;
-
-public final class ChunkCoordinate {
-    private final int x;
-    private final int z;
-
-    public ChunkCoordinate(int x, int z) {
-        this.x = x;
-        this.z = z;
-    }
-
-    public int x() {
-        return x;
-    }
-
-    public int z() {
-        return z;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        ChunkCoordinate that = (ChunkCoordinate) o;
-        return x == that.x && z == that.z;
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(x, z);
-    }
-}
@@ -0,0 +1,92 @@
+package bout2p1_ograines.chunksloader;
+
+import bout2p1_ograines.chunksloader.storage.LoaderEncoding;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts, for each chunk of a world, how many active loaders cover it. A chunk stays
+ * force-loaded while its count is above zero, so adding, removing or toggling a
+ * loader only has to touch the chunks whose count crosses zero.
+ */
+final class ChunkCoverage {
+    /**
+     * Orders chunk keys by region file, then along a Z-order curve inside the region,
+     * so walking them reads each region file in one go.
+     */
+    static final Comparator<Long> REGION_ORDER = Comparator
+        .<Long>comparingInt(key -> keyX(key) >> 5)
+        .thenComparingInt(key -> keyZ(key) >> 5)
+        .thenComparingInt(ChunkCoverage::regionIndex);
+
+    private final Map<Long, Integer> counts = new HashMap<>();
+
+    /**
+     * Adds one loader to the chunk and returns {@code true} if it was not covered before.
+     */
+    boolean add(long key) {
+        return counts.merge(key, 1, Integer::sum) == 1;
+    }
+
+    /**
+     * Removes one loader from the chunk and returns {@code true} if nothing covers it anymore.
+     */
+    boolean remove(long key) {
+        Integer count = counts.get(key);
+        if (count == null) {
+            return false;
+        }
+        if (count <= 1) {
+            counts.remove(key);
+            return true;
+        }
+        counts.put(key, count - 1);
+        return false;
+    }
+
+    boolean contains(long key) {
+        return counts.containsKey(key);
+    }
+
+    Set<Long> keys() {
+        return counts.keySet();
+    }
+
+    int size() {
+        return counts.size();
+    }
+
+    /**
+     * Approximate heap used by the counts: a map entry and a boxed key per chunk, the
+     * small counts themselves being cached boxes.
+     */
+    long getFootprintBytes() {
+        return 48L + 4L * Integer.highestOneBit(Math.max(1, counts.size() * 2)) + 48L * counts.size();
+    }
+
+    static long key(int chunkX, int chunkZ) {
+        return LoaderEncoding.chunkKey(chunkX, chunkZ);
+    }
+
+    static int keyX(long key) {
+        return LoaderEncoding.chunkX(key);
+    }
+
+    static int keyZ(long key) {
+        return LoaderEncoding.chunkZ(key);
+    }
+
+    private static int regionIndex(long key) {
+        int localX = keyX(key) & 31;
+        int localZ = keyZ(key) & 31;
+        int index = 0;
+        for (int bit = 0; bit < 5; bit++) {
+            index |= ((localX >> bit) & 1) << (bit * 2);
+            index |= ((localZ >> bit) & 1) << (bit * 2 + 1);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,120 @@
+package bout2p1_ograines.chunksloader;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Set of chunks stored as packed {@code (x << 32) | z} keys in an open-addressing
+ * table of primitive longs, so building and querying it allocates nothing per chunk.
+ * <p>
+ * Only this package can add chunks; everyone else gets a read-only view.
+ */
+public final class ChunkKeySet {
+    private static final ChunkKeySet EMPTY = new ChunkKeySet(0);
+    private static final long FREE = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    // Key 0 (chunk 0, 0) doubles as the free slot marker, so it is tracked apart.
+    private boolean hasFreeKey;
+
+    ChunkKeySet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) Math.min(1 << 30, (long) (expectedSize / LOAD_FACTOR) + 1)) - 1) << 1;
+        keys = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public static ChunkKeySet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Adds the chunk and returns {@code true} if it was not in the set yet.
+     */
+    boolean add(long key) {
+        if (key == FREE) {
+            if (hasFreeKey) {
+                return false;
+            }
+            hasFreeKey = true;
+            size++;
+            return true;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > keys.length * LOAD_FACTOR) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(int chunkX, int chunkZ) {
+        return contains(ChunkCoverage.key(chunkX, chunkZ));
+    }
+
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != FREE) {
+            if (current == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Passes every packed chunk key to the action, in no particular order.
+     */
+    public void forEach(LongConsumer action) {
+        if (hasFreeKey) {
+            action.accept(FREE);
+        }
+        for (long key : keys) {
+            if (key != FREE) {
+                action.accept(key);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] previous = keys;
+        keys = new long[previous.length << 1];
+        mask = keys.length - 1;
+        for (long key : previous) {
+            if (key == FREE) {
+                continue;
+            }
+            int slot = slot(key);
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+        }
+    }
+
+    private int slot(long key) {
+        // Spread both halves over the low bits; neighbouring chunks differ in few bits.
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
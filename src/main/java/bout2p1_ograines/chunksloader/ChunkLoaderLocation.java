@@ -1,21 +1,26 @@
 package bout2p1_ograines.chunksloader;
 
+import bout2p1_ograines.chunksloader.storage.LoaderEncoding;
 import org.bukkit.Location;
 
 import java.util.Objects;
 import java.util.UUID;
 
+/**
+ * Block of a chunk loader. The coordinates are kept packed in one long, in the
+ * {@link LoaderEncoding#pack(int, int, int)} layout the storage uses as well.
+ */
 public final class ChunkLoaderLocation {
     private final UUID worldId;
-    private final int x;
-    private final int y;
-    private final int z;
+    private final long position;
 
     public ChunkLoaderLocation(UUID worldId, int x, int y, int z) {
+        this(worldId, pack(x, y, z));
+    }
+
+    ChunkLoaderLocation(UUID worldId, long position) {
         this.worldId = worldId;
-        this.x = x;
-        this.y = y;
-        this.z = z;
+        this.position = position;
     }
 
     public UUID worldId() {
@@ -23,19 +28,39 @@ public final class ChunkLoaderLocation {
     }
 
     public int x() {
-        return x;
+        return unpackX(position);
     }
 
     public int y() {
-        return y;
+        return unpackY(position);
     }
 
     public int z() {
-        return z;
+        return unpackZ(position);
+    }
+
+    long position() {
+        return position;
     }
 
     public Location toLocation(org.bukkit.World world) {
-        return new Location(world, x + 0.5, y, z + 0.5);
+        return new Location(world, x() + 0.5, y(), z() + 0.5);
+    }
+
+    static long pack(int x, int y, int z) {
+        return LoaderEncoding.pack(x, y, z);
+    }
+
+    static int unpackX(long position) {
+        return LoaderEncoding.unpackX(position);
+    }
+
+    static int unpackY(long position) {
+        return LoaderEncoding.unpackY(position);
+    }
+
+    static int unpackZ(long position) {
+        return LoaderEncoding.unpackZ(position);
     }
 
     @Override
@@ -43,11 +68,11 @@ public final class ChunkLoaderLocation {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ChunkLoaderLocation that = (ChunkLoaderLocation) o;
-        return x == that.x && y == that.y && z == that.z && Objects.equals(worldId, that.worldId);
+        return position == that.position && Objects.equals(worldId, that.worldId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(worldId, x, y, z);
+        return 31 * Objects.hashCode(worldId) + Long.hashCode(position);
     }
 }
@@ -1,16 +1,26 @@
 package bout2p1_ograines.chunksloader;
 
+import bout2p1_ograines.chunksloader.storage.BinaryLoaderStorage;
+import bout2p1_ograines.chunksloader.storage.ChunkDataLoaderStorage;
+import bout2p1_ograines.chunksloader.storage.ForcedChunkHandover;
+import bout2p1_ograines.chunksloader.storage.JournalEntry;
+import bout2p1_ograines.chunksloader.storage.LoaderRecord;
+import bout2p1_ograines.chunksloader.storage.LoaderSnapshot;
+import bout2p1_ograines.chunksloader.storage.SqliteStorageBackend;
+import bout2p1_ograines.chunksloader.storage.StorageBackend;
+import bout2p1_ograines.chunksloader.storage.WriteBehindWriter;
+import bout2p1_ograines.chunksloader.storage.YamlLoaderStorage;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -18,25 +28,48 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 
 public class ChunkLoaderManager {
-    private static final String STORAGE_FILE = "chunkloaders.yml";
+    // How often the spawn radius game rule is read again, as changing it raises no event.
+    private static final long SPAWN_RADIUS_CHECK_TICKS = 100L;
+    private static final int MAX_AREA_PRESIZE = 1 << 16;
 
     private final ChunksLoaderPlugin plugin;
-    private final File storageFile;
+    private WriteBehindWriter writer;
+    private volatile boolean ready;
+    private volatile StorageBackend loadingBackend;
 
-    private final Map<UUID, Map<ChunkLoaderLocation, ChunkLoaderState>> loadersByWorld = new HashMap<>();
+    private final Map<UUID, LoaderTable> loadersByWorld = new HashMap<>();
+    private final Map<UUID, LoaderGrid> gridsByWorld = new HashMap<>();
+    private final Map<UUID, ChunkCoverage> coverageByWorld = new HashMap<>();
+    private final Map<UUID, long[]> handedOverChunks = new HashMap<>();
+    private final Map<UUID, SpawnArea> spawnAreas = new HashMap<>();
+    private BukkitTask spawnAreaTask;
     private final List<ChunkLoaderListener> listeners = new ArrayList<>();
     private final PlayerEmulationController playerEmulationController;
+    private final ForcedChunkQueue chunkQueue;
+    private final PregenerationQueue pregeneration;
+    private final LoaderWarmUp warmUp;
+    private LoaderChangeSet changes;
+    // Block events hit the same few worlds over and over; skip the map lookup for them.
+    private World lastWorld;
+    private LoaderTable lastLoaders;
+    // Replaced, never modified, each time a batch of changes has been applied.
+    private volatile Map<UUID, LoaderView> views = Map.of();
+    private long viewVersion;
 
     public ChunkLoaderManager(ChunksLoaderPlugin plugin) {
         this.plugin = plugin;
-        this.storageFile = new File(plugin.getDataFolder(), STORAGE_FILE);
         if (!plugin.getDataFolder().exists()) {
             //noinspection ResultOfMethodCallIgnored
             plugin.getDataFolder().mkdirs();
         }
         this.playerEmulationController = new PlayerEmulationController(plugin);
+        this.chunkQueue = new ForcedChunkQueue(plugin);
+        this.pregeneration = new PregenerationQueue(plugin, this::finishGeneration);
+        this.warmUp = new LoaderWarmUp(plugin, chunkQueue, this::finishWarmUp);
     }
 
     public void addListener(ChunkLoaderListener listener) {
@@ -47,130 +80,478 @@ public class ChunkLoaderManager {
         listeners.remove(listener);
     }
 
+    /**
+     * Opens the configured storage and reads the loaders of every loaded world on an
+     * asynchronous task, then publishes them on the main thread in one step. Until
+     * then {@link #isReady()} returns {@code false} and no loader is known.
+     */
     public void load() {
         loadersByWorld.clear();
-        if (!storageFile.exists()) {
+        gridsByWorld.clear();
+        lastWorld = null;
+        views = Map.of();
+        ready = false;
+        long start = System.nanoTime();
+        List<UUID> worldIds = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            worldIds.add(world.getUID());
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            StorageBackend backend = openStorageBackend();
+            loadingBackend = backend;
+            Map<UUID, long[]> handover = plugin.isForcedChunkHandover()
+                ? new ForcedChunkHandover(plugin.getLogger(), plugin.getDataFolder()).read()
+                : Map.of();
+            Map<UUID, LoaderTable> worlds = new HashMap<>();
+            for (UUID worldId : worldIds) {
+                worlds.put(worldId, buildWorld(worldId, backend.loadWorld(worldId)));
+            }
+            long readNanos = System.nanoTime() - start;
+            if (!plugin.isEnabled()) {
+                backend.close();
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> publish(backend, worlds, handover, readNanos, start));
+        });
+    }
+
+    private void publish(StorageBackend backend, Map<UUID, LoaderTable> worlds,
+                         Map<UUID, long[]> handover, long readNanos, long start) {
+        loadingBackend = null;
+        coverageByWorld.clear();
+        handedOverChunks.clear();
+        handedOverChunks.putAll(handover);
+        writer = new WriteBehindWriter(plugin, this::createSnapshot, backend);
+        int loaded = 0;
+        for (World world : Bukkit.getWorlds()) {
+            LoaderTable loaders = worlds.get(world.getUID());
+            if (loaders == null) {
+                // Loaded while storage was being read.
+                loaders = buildWorld(world.getUID(), backend.loadWorld(world.getUID()));
+            }
+            putWorld(world.getUID(), loaders);
+            readIndexedChunks(world);
+            loaded += loadersByWorld.get(world.getUID()).size();
+        }
+        ready = true;
+        writer.start(plugin.getSaveIntervalTicks());
+        if (spawnAreaTask == null) {
+            spawnAreaTask = Bukkit.getScheduler().runTaskTimer(plugin, this::refreshSpawnRadii,
+                SPAWN_RADIUS_CHECK_TICKS, SPAWN_RADIUS_CHECK_TICKS);
+        }
+        chunkQueue.start();
+        pregeneration.start();
+        plugin.getLogger().info(String.format(Locale.ROOT,
+            "Loaded %d chunk loader(s) in %d world(s) from %s storage in %.2fms (ready %.2fms after enable).",
+            loaded, loadersByWorld.size(), backend.getName(), readNanos / 1_000_000.0d,
+            (System.nanoTime() - start) / 1_000_000.0d));
+
+        if (plugin.getWarmUpChunksPerSecond() > 0) {
+            startWarmUp();
+        } else {
+            applyForcedChunks();
+        }
+        notifyListeners(null);
+    }
+
+    /**
+     * Whether the stored loaders have been read. Loader lookups answer as if no loader
+     * existed until then.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Reads the loaders of a world that has just been loaded and forces its chunks.
+     */
+    public void loadWorld(World world) {
+        if (!ready || loadersByWorld.containsKey(world.getUID())) {
             return;
         }
+        long start = System.nanoTime();
+        int loaded = readWorld(world.getUID());
+        loaded += readIndexedChunks(world);
+        if (loaded > 0) {
+            plugin.getLogger().info(String.format(Locale.ROOT, "Loaded %d chunk loader(s) for world %s in %.2fms.",
+                loaded, world.getName(), (System.nanoTime() - start) / 1_000_000.0d));
+        }
+        applyForcedChunks(world);
+        notifyListeners(world);
+    }
 
-        FileConfiguration configuration = YamlConfiguration.loadConfiguration(storageFile);
-        for (String worldId : configuration.getKeys(false)) {
-            UUID uuid;
-            try {
-                uuid = UUID.fromString(worldId);
-            } catch (IllegalArgumentException exception) {
-                plugin.getLogger().warning("Ignoring invalid world identifier '" + worldId + "' in " + STORAGE_FILE);
-                continue;
+    /**
+     * Saves the loaders of a world that is being unloaded and releases them from memory.
+     */
+    public void unloadWorld(World world) {
+        UUID worldId = world.getUID();
+        if (!loadersByWorld.containsKey(worldId)) {
+            return;
+        }
+        flushChanges();
+        LoaderTable loaders = loadersByWorld.remove(worldId);
+        gridsByWorld.remove(worldId);
+        spawnAreas.remove(worldId);
+        lastWorld = null;
+        writer.saveWorld(worldId, toRecords(loaders));
+        // Whatever was forced stays forced in the world data; the next load diffs against it.
+        coverageByWorld.remove(worldId);
+        chunkQueue.discard(worldId);
+        pregeneration.discard(worldId);
+        warmUp.discard(worldId);
+        playerEmulationController.clearWorld(worldId);
+        notifyListeners(world);
+    }
+
+    /**
+     * Reads the loaders of a chunk that has just loaded when the chunk storage is used:
+     * those of indexed chunks not read yet, and loaders the index did not know about,
+     * such as chunks restored from a backup or copied from another world.
+     */
+    public void adoptChunk(Chunk chunk) {
+        if (!ready || !(writer.getBackend() instanceof ChunkDataLoaderStorage storage)) {
+            return;
+        }
+        World world = chunk.getWorld();
+        if (!loadersByWorld.containsKey(world.getUID())) {
+            return;
+        }
+        boolean indexed = storage.isUnread(world.getUID(), chunk.getX(), chunk.getZ());
+        int adopted = adopt(storage, chunk);
+        if (adopted > 0 && !indexed) {
+            plugin.getLogger().info("Found " + adopted + " unindexed chunk loader(s) in chunk " + chunk.getX() + ", " + chunk.getZ()
+                + " of " + world.getName() + ".");
+            writer.requestCompaction();
+        }
+    }
+
+    /**
+     * Reads the indexed chunks of a world that are loaded already and queues the others
+     * to be loaded, a few per tick, so {@link #adoptChunk(Chunk)} reads them. Returns
+     * the number of loaders read right away. While the index is being rebuilt, every
+     * loaded chunk is read.
+     */
+    private int readIndexedChunks(World world) {
+        if (!(writer.getBackend() instanceof ChunkDataLoaderStorage storage)) {
+            return 0;
+        }
+        int adopted = 0;
+        if (storage.isRebuildingIndex()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                adopted += adopt(storage, chunk);
+            }
+        }
+        for (long key : storage.getUnreadChunks(world.getUID())) {
+            int chunkX = ChunkCoverage.keyX(key);
+            int chunkZ = ChunkCoverage.keyZ(key);
+            if (world.isChunkLoaded(chunkX, chunkZ)) {
+                adopted += adopt(storage, world.getChunkAt(chunkX, chunkZ));
+            } else {
+                chunkQueue.fetch(world.getUID(), key);
             }
+        }
+        return adopted;
+    }
 
-            List<?> list = configuration.getList(worldId);
-            if (list == null) {
+    /**
+     * Adds the loaders stored in a loaded chunk that are not known yet, forcing their
+     * chunks with the other changes of the tick. Returns how many were added.
+     */
+    private int adopt(ChunkDataLoaderStorage storage, Chunk chunk) {
+        World world = chunk.getWorld();
+        UUID worldId = world.getUID();
+        LoaderTable loaders = loadersByWorld.get(worldId);
+        int adopted = 0;
+        for (LoaderRecord record : storage.readChunk(chunk)) {
+            ChunkLoaderLocation location = new ChunkLoaderLocation(worldId, record.x(), record.y(), record.z());
+            if (loaders.contains(location.position())) {
                 continue;
             }
-            Map<ChunkLoaderLocation, ChunkLoaderState> set = new HashMap<>();
-            for (Object entry : list) {
-                if (entry instanceof Map<?, ?> map) {
-                    Integer x = mapValue(map, "x");
-                    Integer y = mapValue(map, "y");
-                    Integer z = mapValue(map, "z");
-                    Boolean active = mapBoolean(map, "active");
-                    Boolean emulatePlayer = mapBoolean(map, "player");
-                    String playerName = mapString(map, "playerName");
-                    if (x != null && y != null && z != null) {
-                        ChunkLoaderLocation location = new ChunkLoaderLocation(uuid, x, y, z);
-                        boolean isActive = active == null || active;
-                        boolean emulate = emulatePlayer != null && emulatePlayer;
-                        if (emulate && !playerEmulationController.isSupported()) {
-                            plugin.getLogger().warning("Simulated players are not supported on this server. Disabling player emulation for loader at " + x + ", " + y + ", " + z + ".");
-                            emulate = false;
-                        }
-                        if (emulate && (playerName == null || playerName.isBlank())) {
-                            playerName = generateSimulatedPlayerName(location);
-                        }
-                        ChunkLoaderState state = new ChunkLoaderState(isActive, emulate, playerName);
-                        set.put(location, state);
-                    } else {
-                        plugin.getLogger().warning("Ignoring invalid chunk loader entry for world '" + worldId + "' in " + STORAGE_FILE);
-                    }
-                }
+            ChunkLoaderState state = toState(location, record);
+            loaders.put(location.position(), state);
+            gridsByWorld.get(worldId).add(location.position());
+            if (state.isActive() && !deferUntilGenerated(world, location, coverageRadius(state.getTier()))) {
+                changes().cover(location, true, coverageRadius(state.getTier()));
             }
-            loadersByWorld.put(uuid, set);
+            changes().syncEmulation(location);
+            adopted++;
         }
+        if (adopted > 0) {
+            changes().touch(worldId);
+        }
+        return adopted;
+    }
 
-        Bukkit.getScheduler().runTask(plugin, () -> {
-            applyForcedChunks();
-            notifyListeners(null);
-        });
+    /**
+     * Stops the background writer and synchronously persists any pending changes.
+     */
+    public void shutdown() {
+        flushChanges();
+        if (spawnAreaTask != null) {
+            spawnAreaTask.cancel();
+            spawnAreaTask = null;
+        }
+        chunkQueue.stop();
+        pregeneration.stop();
+        warmUp.stop();
+        if (writer != null) {
+            writer.shutdown();
+        } else if (loadingBackend != null) {
+            // Disabled before the loaders were published; nothing has been changed yet.
+            loadingBackend.close();
+        }
     }
 
-    public void save() {
-        FileConfiguration configuration = new YamlConfiguration();
-        for (Map.Entry<UUID, Map<ChunkLoaderLocation, ChunkLoaderState>> entry : loadersByWorld.entrySet()) {
-            List<Map<String, Object>> list = new ArrayList<>();
-            for (Map.Entry<ChunkLoaderLocation, ChunkLoaderState> loaderEntry : entry.getValue().entrySet()) {
-                ChunkLoaderLocation location = loaderEntry.getKey();
-                ChunkLoaderState state = loaderEntry.getValue();
-                Map<String, Object> map = new HashMap<>();
-                map.put("x", location.x());
-                map.put("y", location.y());
-                map.put("z", location.z());
-                map.put("active", state != null && state.isActive());
-                if (state != null && state.isPlayerEmulationEnabled()) {
-                    map.put("player", true);
-                }
-                if (state != null && state.getSimulatedPlayerName() != null) {
-                    map.put("playerName", state.getSimulatedPlayerName());
-                }
-                list.add(map);
-            }
-            configuration.set(entry.getKey().toString(), list);
+    public WriteBehindWriter getWriter() {
+        return writer;
+    }
+
+    private int readWorld(UUID worldId) {
+        List<LoaderRecord> records = writer.getPendingWorldSave(worldId);
+        if (records == null) {
+            records = writer.getBackend().loadWorld(worldId);
+        }
+        LoaderTable loaders = buildWorld(worldId, records);
+        putWorld(worldId, loaders);
+        return loaders.size();
+    }
+
+    private void putWorld(UUID worldId, LoaderTable loaders) {
+        loadersByWorld.put(worldId, loaders);
+        lastWorld = null;
+        LoaderGrid grid = new LoaderGrid(worldId);
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            grid.add(loaders.position(slot));
+        }
+        gridsByWorld.put(worldId, grid);
+    }
+
+    /**
+     * Turns stored records into loader states. Only touches immutable plugin state, so
+     * it may run off the main thread.
+     */
+    private LoaderTable buildWorld(UUID worldId, List<LoaderRecord> records) {
+        LoaderTable table = new LoaderTable(worldId, records.size());
+        for (LoaderRecord record : records) {
+            ChunkLoaderLocation location = new ChunkLoaderLocation(worldId, record.x(), record.y(), record.z());
+            table.put(location.position(), toState(location, record));
+        }
+        return table;
+    }
+
+    private ChunkLoaderState toState(ChunkLoaderLocation location, LoaderRecord record) {
+        boolean emulate = record.playerEmulation();
+        String playerName = record.simulatedPlayerName();
+        if (emulate && !playerEmulationController.isSupported()) {
+            plugin.getLogger().warning("Simulated players are not supported on this server. Disabling player emulation for loader at " + record.x() + ", " + record.y() + ", " + record.z() + ".");
+            emulate = false;
+        }
+        if (emulate && (playerName == null || playerName.isBlank())) {
+            playerName = LoaderTable.generatedName(location.worldId(), location.x(), location.y(), location.z());
+        }
+        return new ChunkLoaderState(record.active(), emulate, playerName,
+            record.keepLoaded() ? LoaderTier.LOADED : LoaderTier.TICKING);
+    }
+
+    /**
+     * Adds a loader read from an import file without forcing its chunks or notifying
+     * listeners; call {@link #refreshWorld(World)} once the import is done. Active
+     * loaders in terrain that is not generated yet wait for pregeneration instead.
+     * Returns {@code false} when the world is not loaded or already has a loader there.
+     */
+    public boolean importLoader(World world, LoaderRecord record) {
+        UUID worldId = world.getUID();
+        LoaderTable loaders = loadersByWorld.get(worldId);
+        if (loaders == null) {
+            return false;
+        }
+        ChunkLoaderLocation location = new ChunkLoaderLocation(worldId, record.x(), record.y(), record.z());
+        if (loaders.contains(location.position())) {
+            return false;
+        }
+        ChunkLoaderState state = toState(location, record);
+        loaders.put(location.position(), state);
+        gridsByWorld.get(worldId).add(location.position());
+        if (state.isActive()) {
+            // Left out of refreshWorld until generated, so its chunks are not generated on the main thread.
+            deferUntilGenerated(world, location, coverageRadius(state.getTier()));
         }
+        record(JournalEntry.add(worldId, new LoaderRecord(location.x(), location.y(), location.z(),
+            state.isActive(), state.isPlayerEmulationEnabled(), state.getSimulatedPlayerName(), state.getTier() == LoaderTier.LOADED)));
+        return true;
+    }
+
+    public void refreshWorld(World world) {
+        applyForcedChunks(world);
+        notifyListeners(world);
+    }
 
+    private StorageBackend openStorageBackend() {
+        StorageBackend backend = createStorageBackend();
+        try {
+            backend.open();
+            return backend;
+        } catch (IOException exception) {
+            backend.close();
+            // Chunk storage keeps its loaders in the worlds, where binary storage would not see them.
+            if (backend instanceof BinaryLoaderStorage || backend instanceof ChunkDataLoaderStorage) {
+                plugin.getLogger().severe("Unable to open chunk loader storage: " + exception.getMessage());
+                return backend;
+            }
+            plugin.getLogger().severe("Unable to open " + backend.getName() + " storage, falling back to binary storage: " + exception.getMessage());
+        }
+        StorageBackend fallback = new BinaryLoaderStorage(plugin.getLogger(), plugin.getDataFolder(), plugin.getJournalCompactionBytes());
         try {
-            configuration.save(storageFile);
+            fallback.open();
         } catch (IOException exception) {
-            plugin.getLogger().severe("Unable to save chunk loaders: " + exception.getMessage());
+            plugin.getLogger().severe("Unable to open chunk loader storage: " + exception.getMessage());
         }
+        return fallback;
     }
 
-    private Integer mapValue(Map<?, ?> map, String key) {
-        Object value = map.get(key);
-        if (value instanceof Number number) {
-            return number.intValue();
+    private StorageBackend createStorageBackend() {
+        String type = plugin.getStorageType();
+        if (type.equals("yaml")) {
+            return new YamlLoaderStorage(plugin.getLogger(), plugin.getDataFolder());
         }
-        return null;
+        if (type.equals("sqlite")) {
+            return new SqliteStorageBackend(plugin.getLogger(), plugin.getDataFolder());
+        }
+        if (type.equals("chunk")) {
+            return new ChunkDataLoaderStorage(plugin);
+        }
+        if (!type.equals("binary")) {
+            plugin.getLogger().warning("Unknown storage type '" + type + "', using binary storage.");
+        }
+        return new BinaryLoaderStorage(plugin.getLogger(), plugin.getDataFolder(), plugin.getJournalCompactionBytes());
+    }
+
+    private void record(JournalEntry entry) {
+        changes().record(entry);
     }
 
-    private Boolean mapBoolean(Map<?, ?> map, String key) {
-        Object value = map.get(key);
-        if (value instanceof Boolean bool) {
-            return bool;
+    /**
+     * Returns the changes of the current tick, scheduling them to be applied at the
+     * start of the next one.
+     */
+    private LoaderChangeSet changes() {
+        if (changes == null) {
+            changes = new LoaderChangeSet();
+            Bukkit.getScheduler().runTask(plugin, this::flushChanges);
         }
-        if (value instanceof String string) {
-            return Boolean.parseBoolean(string);
+        return changes;
+    }
+
+    /**
+     * Returns a future that completes once every loader change made so far has been
+     * applied to forced chunks, simulated players, storage and listeners.
+     */
+    public CompletableFuture<Void> whenApplied() {
+        return changes == null ? CompletableFuture.completedFuture(null) : changes.applied();
+    }
+
+    /**
+     * Applies the changes collected since the last flush in one pass: each loader's
+     * coverage and simulated player once, one batch for the writer and one
+     * notification per world.
+     */
+    private void flushChanges() {
+        LoaderChangeSet batch = changes;
+        if (batch == null) {
+            return;
+        }
+        changes = null;
+        try {
+            for (JournalEntry entry : batch.entries()) {
+                writer.record(entry);
+            }
+            Set<UUID> rebuilt = new HashSet<>();
+            // Additions first, so a chunk covered again in the same batch never drops to zero.
+            for (boolean covered : new boolean[] {true, false}) {
+                for (Map.Entry<ChunkLoaderLocation, List<LoaderChangeSet.Coverage>> entry : batch.coverage().entrySet()) {
+                    UUID worldId = entry.getKey().worldId();
+                    World world = Bukkit.getWorld(worldId);
+                    if (world == null || !loadersByWorld.containsKey(worldId) || rebuilt.contains(worldId)) {
+                        continue;
+                    }
+                    if (!coverageByWorld.containsKey(worldId)) {
+                        // The full rebuild already includes every pending change of this world.
+                        applyForcedChunks(world);
+                        rebuilt.add(worldId);
+                        continue;
+                    }
+                    for (LoaderChangeSet.Coverage change : entry.getValue()) {
+                        if (change.covered() == covered) {
+                            updateCoverage(world, entry.getKey(), covered, change.radius());
+                        }
+                    }
+                }
+            }
+            for (ChunkLoaderLocation location : batch.emulation()) {
+                ChunkLoaderState state = findState(location);
+                if (state != null) {
+                    syncPlayerEmulation(location, state);
+                }
+            }
+            if (batch.isAllWorlds()) {
+                applyForcedChunks();
+                notifyListeners(null);
+            } else {
+                for (UUID worldId : batch.worlds()) {
+                    World world = Bukkit.getWorld(worldId);
+                    if (world != null) {
+                        notifyListeners(world);
+                    }
+                }
+            }
+        } finally {
+            batch.applied().complete(null);
         }
-        if (value instanceof Number number) {
-            return number.intValue() != 0;
+    }
+
+    /**
+     * Copies the loaders of every loaded world. Must be called from the main thread.
+     */
+    public LoaderSnapshot createSnapshot() {
+        Map<UUID, List<LoaderRecord>> worlds = new HashMap<>();
+        for (Map.Entry<UUID, LoaderTable> entry : loadersByWorld.entrySet()) {
+            worlds.put(entry.getKey(), toRecords(entry.getValue()));
         }
-        return null;
+        return new LoaderSnapshot(worlds);
     }
 
-    private String mapString(Map<?, ?> map, String key) {
-        Object value = map.get(key);
-        if (value == null) {
-            return null;
+    private List<LoaderRecord> toRecords(LoaderTable loaders) {
+        List<LoaderRecord> records = new ArrayList<>(loaders.size());
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            long position = loaders.position(slot);
+            records.add(new LoaderRecord(
+                ChunkLoaderLocation.unpackX(position),
+                ChunkLoaderLocation.unpackY(position),
+                ChunkLoaderLocation.unpackZ(position),
+                loaders.is(slot, LoaderTable.ACTIVE),
+                loaders.is(slot, LoaderTable.PLAYER_EMULATION),
+                loaders.name(slot),
+                loaders.is(slot, LoaderTable.KEEP_LOADED)
+            ));
         }
-        return String.valueOf(value);
+        return records;
     }
 
     public boolean isChunkLoaderBlock(Block block) {
-        UUID worldId = block.getWorld().getUID();
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(worldId);
-        if (loaders == null) {
-            return false;
+        LoaderTable loaders = loadersOf(block.getWorld());
+        return loaders != null && loaders.contains(ChunkLoaderLocation.pack(block.getX(), block.getY(), block.getZ()));
+    }
+
+    /**
+     * Returns the loaders of a loaded world without allocating, for the block event
+     * paths that run for every block broken or clicked on the server.
+     */
+    private LoaderTable loadersOf(World world) {
+        if (world != lastWorld) {
+            lastLoaders = loadersByWorld.get(world.getUID());
+            lastWorld = world;
         }
-        ChunkLoaderLocation location = new ChunkLoaderLocation(worldId, block.getX(), block.getY(), block.getZ());
-        return loaders.containsKey(location);
+        return lastLoaders;
     }
 
     public boolean canPlaceLoader(Location location, int radius) {
@@ -182,59 +563,87 @@ public class ChunkLoaderManager {
             return false;
         }
 
-        Map<ChunkLoaderLocation, ChunkLoaderState> states = loadersByWorld.get(worldId);
-        if (states == null) {
-            return true;
-        }
-        for (ChunkLoaderLocation loader : states.keySet()) {
-            if (overlaps(chunkX, chunkZ, loader, radius)) {
-                return false;
-            }
-        }
-        return true;
+        LoaderGrid grid = gridsByWorld.get(worldId);
+        return grid == null || !grid.anyWithin(chunkX, chunkZ, radius * 2);
     }
 
-    public void addLoader(Location location) {
+    /**
+     * Returns the loaders of a world within {@code radius} chunks of the given chunk,
+     * closest first.
+     */
+    public List<ChunkLoaderLocation> getLoadersNear(World world, int chunkX, int chunkZ, int radius) {
+        LoaderGrid grid = gridsByWorld.get(world.getUID());
+        return grid == null ? List.of() : grid.within(chunkX, chunkZ, radius);
+    }
+
+    /**
+     * Returns the loader closest to the location in its world, or {@code null} if the
+     * world has none.
+     */
+    public ChunkLoaderLocation getNearestLoader(Location location) {
+        LoaderGrid grid = gridsByWorld.get(location.getWorld().getUID());
+        return grid == null ? null : grid.nearest(location.getBlockX(), location.getBlockZ());
+    }
+
+    /**
+     * Adds a loader at the given block. The loader is known right away; its chunks are
+     * forced with the other changes of the tick, when the returned future completes.
+     */
+    public CompletableFuture<Void> addLoader(Location location) {
         UUID worldId = location.getWorld().getUID();
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.computeIfAbsent(worldId, k -> new HashMap<>());
+        if (!loadersByWorld.containsKey(worldId)) {
+            loadWorld(location.getWorld());
+        }
+        LoaderTable loaders = loadersByWorld.get(worldId);
         ChunkLoaderLocation loaderLocation = new ChunkLoaderLocation(worldId, location.getBlockX(), location.getBlockY(), location.getBlockZ());
-        loaders.put(loaderLocation, new ChunkLoaderState(true, false, null));
-        save();
-        applyForcedChunks(location.getWorld());
-        notifyListeners(location.getWorld());
+        ChunkLoaderState state = new ChunkLoaderState(true, false, null);
+        if (loaders.put(loaderLocation.position(), state)) {
+            gridsByWorld.get(worldId).add(loaderLocation.position());
+        }
+        record(JournalEntry.add(worldId, new LoaderRecord(loaderLocation.x(), loaderLocation.y(), loaderLocation.z(), true, false, null, false)));
+        if (!deferUntilGenerated(location.getWorld(), loaderLocation, coverageRadius(state.getTier()))) {
+            changes().cover(loaderLocation, true, coverageRadius(state.getTier()));
+        }
+        changes().touch(worldId);
+        return whenApplied();
     }
 
-    public boolean removeLoader(Block block) {
+    /**
+     * Removes the loader at the given block, if any. The loader is gone right away; its
+     * chunks are released with the other changes of the tick, when the returned future
+     * completes.
+     */
+    public CompletableFuture<Void> removeLoader(Block block) {
         World world = block.getWorld();
         UUID worldId = world.getUID();
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(worldId);
+        LoaderTable loaders = loadersByWorld.get(worldId);
         if (loaders == null) {
-            return false;
+            return whenApplied();
         }
         ChunkLoaderLocation location = new ChunkLoaderLocation(worldId, block.getX(), block.getY(), block.getZ());
-        ChunkLoaderState removed = loaders.remove(location);
+        ChunkLoaderState removed = loaders.remove(location.position());
         if (removed != null) {
             playerEmulationController.disable(location, removed);
-            if (loaders.isEmpty()) {
-                loadersByWorld.remove(worldId);
+            gridsByWorld.get(worldId).remove(location.position());
+            record(JournalEntry.remove(worldId, location.x(), location.y(), location.z()));
+            warmUp.cancel(location);
+            if (removed.isActive() && !pregeneration.cancel(location)) {
+                changes().cover(location, false, coverageRadius(removed.getTier()));
             }
-            save();
-            applyForcedChunks(world);
-            notifyListeners(world);
-            return true;
+            changes().touch(worldId);
         }
-        return false;
+        return whenApplied();
     }
 
     public Set<ChunkLoaderLocation> getLoaders(UUID worldId) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(worldId);
+        LoaderTable loaders = loadersByWorld.get(worldId);
         if (loaders == null) {
             return Set.of();
         }
         Set<ChunkLoaderLocation> active = new HashSet<>();
-        for (Map.Entry<ChunkLoaderLocation, ChunkLoaderState> entry : loaders.entrySet()) {
-            if (entry.getValue() != null && entry.getValue().isActive()) {
-                active.add(entry.getKey());
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            if (loaders.is(slot, LoaderTable.ACTIVE)) {
+                active.add(loaders.location(slot));
             }
         }
         return active;
@@ -242,12 +651,41 @@ public class ChunkLoaderManager {
 
     public Set<ChunkLoaderLocation> getAllLoaders() {
         Set<ChunkLoaderLocation> all = new HashSet<>();
-        for (Map<ChunkLoaderLocation, ChunkLoaderState> loaders : loadersByWorld.values()) {
-            all.addAll(loaders.keySet());
+        for (LoaderTable loaders : loadersByWorld.values()) {
+            for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+                all.add(loaders.location(slot));
+            }
         }
         return all;
     }
 
+    /**
+     * Number of loaders in every loaded world.
+     */
+    public int getLoaderCount() {
+        int count = 0;
+        for (LoaderTable loaders : loadersByWorld.values()) {
+            count += loaders.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns how much memory the loaders of a world take, or {@code null} if the world
+     * is not loaded.
+     */
+    public MemoryUsage getMemoryUsage(UUID worldId) {
+        LoaderTable loaders = loadersByWorld.get(worldId);
+        if (loaders == null) {
+            return null;
+        }
+        LoaderGrid grid = gridsByWorld.get(worldId);
+        ChunkCoverage coverage = coverageByWorld.get(worldId);
+        return new MemoryUsage(loaders.size(), loaders.capacity(), loaders.getStoredNameCount(), loaders.getFootprintBytes(),
+            grid == null ? 0L : grid.getFootprintBytes(),
+            coverage == null ? 0 : coverage.size(), coverage == null ? 0L : coverage.getFootprintBytes());
+    }
+
     public void applyForcedChunks() {
         for (World world : Bukkit.getWorlds()) {
             applyForcedChunks(world);
@@ -255,6 +693,7 @@ public class ChunkLoaderManager {
     }
 
     private void notifyListeners(World world) {
+        publishViews(world);
         for (ChunkLoaderListener listener : new ArrayList<>(listeners)) {
             try {
                 listener.onLoadersChanged(world);
@@ -264,37 +703,339 @@ public class ChunkLoaderManager {
         }
     }
 
+    /**
+     * Rebuilds the chunk coverage of a world from its active loaders and queues the
+     * forced chunk changes needed to match it as bulk work. Only chunks whose state
+     * changes are queued. With chunk tickets the plugin starts out holding nothing;
+     * otherwise the first call for a world treats every chunk that is already forced
+     * as the plugin's own unless a hand-over said otherwise. Chunks to force are
+     * queued region file by region file.
+     */
     public void applyForcedChunks(World world) {
-        clearForcedChunks(world);
-        int radius = plugin.getLoaderRadius();
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(world.getUID());
+        List<Long> added = reconcile(world);
+        if (plugin.isRegionOrderedActivation()) {
+            added.sort(ChunkCoverage.REGION_ORDER);
+        }
+        for (long key : added) {
+            chunkQueue.enqueue(world.getUID(), key, true, false);
+        }
+        syncEmulation(world);
+    }
+
+    /**
+     * Rebuilds the coverage of a world and queues the chunks to unforce. Returns the
+     * chunks that still have to be forced, leaving it to the caller to queue them.
+     */
+    private List<Long> reconcile(World world) {
+        UUID worldId = world.getUID();
+        if (changes != null) {
+            changes.discardCoverage(worldId);
+        }
+        ChunkCoverage desired = new ChunkCoverage();
+        LoaderTable loaders = loadersByWorld.get(worldId);
+        if (loaders != null) {
+            for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+                if (loaders.is(slot, LoaderTable.ACTIVE) && !pregeneration.contains(loaders.location(slot))) {
+                    forEachChunk(loaders.position(slot), coverageRadius(loaders.tier(slot)), desired::add);
+                }
+            }
+        }
+
+        Set<Long> owned = new HashSet<>();
+        ChunkCoverage previous = coverageByWorld.get(worldId);
+        long[] handedOver = handedOverChunks.remove(worldId);
+        if (previous != null) {
+            owned.addAll(previous.keys());
+        } else if (plugin.isUsingChunkTickets()) {
+            // Plugin tickets never outlive the plugin, so nothing is held yet.
+        } else if (handedOver != null) {
+            for (long key : handedOver) {
+                owned.add(key);
+            }
+        } else {
+            for (Chunk chunk : world.getForceLoadedChunks()) {
+                owned.add(ChunkCoverage.key(chunk.getX(), chunk.getZ()));
+            }
+        }
+        for (long key : owned) {
+            if (!desired.contains(key)) {
+                chunkQueue.enqueue(worldId, key, false, false);
+            }
+        }
+        List<Long> added = new ArrayList<>();
+        for (long key : desired.keys()) {
+            if (!owned.contains(key)) {
+                added.add(key);
+            }
+        }
+        coverageByWorld.put(worldId, desired);
+        return added;
+    }
+
+    private void syncEmulation(World world) {
+        UUID worldId = world.getUID();
+        LoaderTable loaders = loadersByWorld.get(worldId);
         if (loaders == null) {
-            playerEmulationController.clearWorld(world.getUID());
+            playerEmulationController.clearWorld(worldId);
             return;
         }
-        for (Map.Entry<ChunkLoaderLocation, ChunkLoaderState> entry : loaders.entrySet()) {
-            if (entry.getValue() != null && entry.getValue().isActive()) {
-                forceChunkArea(world, entry.getKey(), radius);
+        // Only loaders with a simulated player, current or past, have anything to sync.
+        Map<ChunkLoaderLocation, ChunkLoaderState> effective = new HashMap<>();
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            if (loaders.is(slot, LoaderTable.PLAYER_EMULATION) || loaders.hasName(slot)) {
+                ChunkLoaderLocation location = loaders.location(slot);
+                if (!isWaiting(location)) {
+                    effective.put(location, loaders.state(slot));
+                }
             }
         }
-        playerEmulationController.syncWorld(world, loaders);
+        playerEmulationController.syncWorld(world, effective);
     }
 
-    public void clearAllForcedChunks() {
+    /**
+     * Reconciles every world like {@link #applyForcedChunks()}, but queues the chunks
+     * to force for warm-up: loader by loader, those with a simulated player first and
+     * then by distance from the world spawn, each loader's chunks region by region when
+     * region ordered activation is on. Simulated players spawn once the chunks of their
+     * loader are forced.
+     */
+    private void startWarmUp() {
+        List<ChunkLoaderLocation> order = new ArrayList<>();
+        Map<UUID, Set<Long>> addedByWorld = new HashMap<>();
+        Map<ChunkLoaderLocation, Long> distances = new HashMap<>();
         for (World world : Bukkit.getWorlds()) {
-            clearForcedChunks(world);
+            addedByWorld.put(world.getUID(), new HashSet<>(reconcile(world)));
+            LoaderTable loaders = loadersByWorld.get(world.getUID());
+            if (loaders == null) {
+                continue;
+            }
+            int spawnX = world.getSpawnLocation().getBlockX() >> 4;
+            int spawnZ = world.getSpawnLocation().getBlockZ() >> 4;
+            for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+                ChunkLoaderLocation location = loaders.location(slot);
+                if (loaders.is(slot, LoaderTable.ACTIVE) && !pregeneration.contains(location)) {
+                    long dx = Math.floorDiv(location.x(), 16) - spawnX;
+                    long dz = Math.floorDiv(location.z(), 16) - spawnZ;
+                    distances.put(location, dx * dx + dz * dz);
+                    order.add(location);
+                }
+            }
         }
-        playerEmulationController.clearAll();
+        order.sort((first, second) -> {
+            int priority = Integer.compare(warmUpPriority(second), warmUpPriority(first));
+            return priority != 0 ? priority : Long.compare(distances.get(first), distances.get(second));
+        });
+
+        List<LoaderWarmUp.Entry> entries = new ArrayList<>();
+        int queued = 0;
+        List<Long> chunks = new ArrayList<>();
+        for (ChunkLoaderLocation location : order) {
+            Set<Long> added = addedByWorld.get(location.worldId());
+            chunks.clear();
+            ChunkLoaderState state = findState(location);
+            forEachChunk(location, coverageRadius(state.getTier()), key -> {
+                if (added.remove(key)) {
+                    chunks.add(key);
+                }
+            });
+            // Loaders keep their priority order; within one, chunks go region by region.
+            if (plugin.isRegionOrderedActivation()) {
+                chunks.sort(ChunkCoverage.REGION_ORDER);
+            }
+            for (long key : chunks) {
+                chunkQueue.warmUp(location.worldId(), key);
+            }
+            queued += chunks.size();
+            // The loader is warm once the last of its chunks, in queue order, is forced.
+            entries.add(new LoaderWarmUp.Entry(location, !chunks.isEmpty(), chunks.isEmpty() ? 0L : chunks.get(chunks.size() - 1)));
+        }
+        warmUp.begin(entries, queued);
+        for (World world : Bukkit.getWorlds()) {
+            syncEmulation(world);
+        }
+    }
+
+    private int warmUpPriority(ChunkLoaderLocation location) {
+        return isPlayerEmulationEnabled(location) ? 1 : 0;
+    }
+
+    /**
+     * Spawns the simulated player of a loader whose chunks have been forced during
+     * warm-up, returning {@code true} if one was spawned.
+     */
+    private boolean finishWarmUp(ChunkLoaderLocation location) {
+        ChunkLoaderState state = findState(location);
+        if (state == null || !state.isActive() || !state.isPlayerEmulationEnabled() || !playerEmulationController.isSupported()) {
+            return false;
+        }
+        syncPlayerEmulation(location, state);
+        return true;
+    }
+
+    private boolean isWaiting(ChunkLoaderLocation location) {
+        return pregeneration.contains(location) || warmUp.contains(location);
+    }
+
+    public LoaderWarmUp getWarmUp() {
+        return warmUp;
     }
 
-    private void forceChunkArea(World world, ChunkLoaderLocation loader, int radius) {
-        int centerX = Math.floorDiv(loader.x(), 16);
-        int centerZ = Math.floorDiv(loader.z(), 16);
+    /**
+     * Queues the missing chunks of a loader's area for generation and returns
+     * {@code true} if there were any. The loader is activated once they exist.
+     */
+    private boolean deferUntilGenerated(World world, ChunkLoaderLocation location, int radius) {
+        ArrayDeque<Long> missing = new ArrayDeque<>();
+        forEachChunk(location, radius, key -> {
+            if (!world.isChunkGenerated(ChunkCoverage.keyX(key), ChunkCoverage.keyZ(key))) {
+                missing.add(key);
+            }
+        });
+        if (missing.isEmpty()) {
+            return false;
+        }
+        pregeneration.add(location, missing);
+        return true;
+    }
+
+    private void finishGeneration(ChunkLoaderLocation location) {
+        ChunkLoaderState state = findState(location);
+        if (state == null || !state.isActive()) {
+            return;
+        }
+        changes().cover(location, true, coverageRadius(state.getTier()));
+        changes().syncEmulation(location);
+    }
+
+    /**
+     * Whether the loader is waiting for the chunks of its area to be generated before
+     * it forces them.
+     */
+    public boolean isGenerating(ChunkLoaderLocation location) {
+        return pregeneration.contains(location);
+    }
+
+    public PregenerationQueue getPregeneration() {
+        return pregeneration;
+    }
+
+    /**
+     * Adds or removes one loader's area from the coverage of its world, forcing only
+     * chunks that become covered and unforcing only chunks that no loader covers
+     * anymore, after the release grace period. The changes skip ahead of queued bulk
+     * work.
+     */
+    private void updateCoverage(World world, ChunkLoaderLocation loader, boolean covered, int radius) {
+        ChunkCoverage coverage = coverageByWorld.get(world.getUID());
+        if (coverage == null) {
+            applyForcedChunks(world);
+            return;
+        }
+        forEachChunk(loader, radius, key -> {
+            if (covered && coverage.add(key)) {
+                chunkQueue.enqueue(world.getUID(), key, true, true);
+            } else if (!covered && coverage.remove(key)) {
+                chunkQueue.release(world.getUID(), key);
+            }
+        });
+    }
+
+    private void syncPlayerEmulation(ChunkLoaderLocation location, ChunkLoaderState state) {
+        if (state.isActive() && !isWaiting(location) && state.isPlayerEmulationEnabled() && playerEmulationController.isSupported()) {
+            playerEmulationController.ensureSpawned(location, state);
+        } else {
+            playerEmulationController.disable(location, state);
+        }
+    }
+
+    /**
+     * Radius of the chunks a loader forces, which for {@link LoaderTier#LOADED} is only
+     * its own chunk.
+     */
+    public int coverageRadius(LoaderTier tier) {
+        return tier == LoaderTier.LOADED ? 0 : plugin.getLoaderRadius();
+    }
+
+    private static void forEachChunk(ChunkLoaderLocation loader, int radius, LongConsumer action) {
+        forEachChunk(loader.position(), radius, action);
+    }
+
+    private static void forEachChunk(long position, int radius, LongConsumer action) {
+        int centerX = ChunkLoaderLocation.unpackX(position) >> 4;
+        int centerZ = ChunkLoaderLocation.unpackZ(position) >> 4;
         for (int dx = -radius; dx <= radius; dx++) {
             for (int dz = -radius; dz <= radius; dz++) {
-                world.setChunkForceLoaded(centerX + dx, centerZ + dz, true);
+                action.accept(ChunkCoverage.key(centerX + dx, centerZ + dz));
+            }
+        }
+    }
+
+    /**
+     * Number of chunks currently forced by loaders across all worlds.
+     */
+    public int getForcedChunkCount() {
+        int count = 0;
+        for (ChunkCoverage coverage : coverageByWorld.values()) {
+            count += coverage.size();
+        }
+        return count;
+    }
+
+    public ForcedChunkQueue getChunkQueue() {
+        return chunkQueue;
+    }
+
+    public void clearAllForcedChunks() {
+        flushChanges();
+        chunkQueue.clear();
+        for (World world : Bukkit.getWorlds()) {
+            if (plugin.isUsingChunkTickets()) {
+                world.removePluginChunkTickets(plugin);
+            } else {
+                clearForcedChunks(world);
             }
         }
+        coverageByWorld.clear();
+        playerEmulationController.clearAll();
+    }
+
+    /**
+     * Leaves every chunk forced and records which of them belong to the plugin, so the
+     * next enable only applies the difference. Used instead of
+     * {@link #clearAllForcedChunks()} when hand-over is enabled.
+     */
+    public void handOverForcedChunks() {
+        flushChanges();
+        playerEmulationController.clearAll();
+        if (!ready) {
+            // The previous hand-over has not been consumed yet; keep it.
+            return;
+        }
+        Map<UUID, long[]> worlds = new HashMap<>(handedOverChunks);
+        for (Map.Entry<UUID, ChunkCoverage> entry : coverageByWorld.entrySet()) {
+            // Hand over what is actually forced: queued changes have not been applied yet.
+            Set<Long> forced = new HashSet<>(entry.getValue().keys());
+            for (Map.Entry<Long, Boolean> pending : chunkQueue.getPending(entry.getKey()).entrySet()) {
+                if (pending.getValue()) {
+                    forced.remove(pending.getKey());
+                } else {
+                    forced.add(pending.getKey());
+                }
+            }
+            long[] keys = new long[forced.size()];
+            int index = 0;
+            for (long key : forced) {
+                keys[index++] = key;
+            }
+            worlds.put(entry.getKey(), keys);
+        }
+        chunkQueue.clear();
+        try {
+            new ForcedChunkHandover(plugin.getLogger(), plugin.getDataFolder()).write(worlds);
+        } catch (IOException exception) {
+            plugin.getLogger().severe("Unable to save forced chunks, unforcing them instead: " + exception.getMessage());
+            clearAllForcedChunks();
+        }
     }
 
     private void clearForcedChunks(World world) {
@@ -304,116 +1045,190 @@ public class ChunkLoaderManager {
         }
     }
 
-    private boolean overlaps(int chunkX, int chunkZ, ChunkLoaderLocation loader, int radius) {
-        World world = Bukkit.getWorld(loader.worldId());
-        if (world == null) {
-            return false;
+    /**
+     * Whether a loader covering {@code radius} chunks around the chunk would reach into
+     * the spawn chunks of the world.
+     */
+    public boolean overlapsSpawnArea(World world, int chunkX, int chunkZ, int radius) {
+        return getSpawnArea(world).overlaps(chunkX, chunkZ, radius);
+    }
+
+    public boolean isInSpawnArea(World world, int chunkX, int chunkZ) {
+        return getSpawnArea(world).contains(chunkX, chunkZ);
+    }
+
+    /**
+     * Returns the spawn chunks of the world, spawn radius included, as cached by
+     * {@link #refreshSpawnArea(World)}.
+     */
+    SpawnArea getSpawnArea(World world) {
+        SpawnArea area = spawnAreas.get(world.getUID());
+        if (area == null) {
+            area = SpawnArea.of(world);
+            spawnAreas.put(world.getUID(), area);
         }
-        int existingX = Math.floorDiv(loader.x(), 16);
-        int existingZ = Math.floorDiv(loader.z(), 16);
-        return Math.abs(existingX - chunkX) <= radius * 2 && Math.abs(existingZ - chunkZ) <= radius * 2;
+        return area;
     }
 
-    private boolean overlapsSpawnArea(World world, int chunkX, int chunkZ, int radius) {
-        Chunk spawnChunk = world.getChunkAt(world.getSpawnLocation());
-        int spawnX = spawnChunk.getX();
-        int spawnZ = spawnChunk.getZ();
-        return Math.abs(spawnX - chunkX) <= radius && Math.abs(spawnZ - chunkZ) <= radius;
+    /**
+     * Reads the spawn and spawn radius of a world again. Called when a world loads or
+     * its spawn moves.
+     */
+    public void refreshSpawnArea(World world) {
+        spawnAreas.put(world.getUID(), SpawnArea.of(world));
     }
 
-    public boolean isInSpawnArea(World world, int chunkX, int chunkZ) {
-        int radius = plugin.getLoaderRadius();
-        return overlapsSpawnArea(world, chunkX, chunkZ, radius);
-    }
-
-    public Set<ChunkCoordinate> getLoadedChunkArea(World world) {
-        Set<ChunkCoordinate> loaded = new HashSet<>();
-        int radius = plugin.getLoaderRadius();
-        for (ChunkLoaderLocation loader : getLoaders(world.getUID())) {
-            int centerX = Math.floorDiv(loader.x(), 16);
-            int centerZ = Math.floorDiv(loader.z(), 16);
-            for (int dx = -radius; dx <= radius; dx++) {
-                for (int dz = -radius; dz <= radius; dz++) {
-                    loaded.add(new ChunkCoordinate(centerX + dx, centerZ + dz));
-                }
+    /**
+     * Catches changes of the spawn radius game rule, which raise no event, every
+     * {@link #SPAWN_RADIUS_CHECK_TICKS} ticks.
+     */
+    private void refreshSpawnRadii() {
+        for (Map.Entry<UUID, SpawnArea> entry : spawnAreas.entrySet()) {
+            World world = Bukkit.getWorld(entry.getKey());
+            SpawnArea area = entry.getValue();
+            if (world != null && SpawnArea.spawnChunkRadius(world) != area.radius()) {
+                entry.setValue(SpawnArea.of(world));
             }
         }
-        return loaded;
     }
 
-    public Set<ChunkCoordinate> getInactiveChunkArea(World world) {
-        Set<ChunkCoordinate> inactive = new HashSet<>();
-        int radius = plugin.getLoaderRadius();
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(world.getUID());
-        if (loaders == null) {
-            return inactive;
+    /**
+     * Returns the chunks the world's active loaders cover, each with the radius of its
+     * tier, so a {@link LoaderTier#LOADED} loader only adds its own chunk.
+     */
+    public ChunkKeySet getLoadedChunkArea(World world) {
+        return chunkArea(world, true);
+    }
+
+    /**
+     * Returns the chunks the world's disabled loaders would cover, each with the radius
+     * of its tier.
+     */
+    public ChunkKeySet getInactiveChunkArea(World world) {
+        return chunkArea(world, false);
+    }
+
+    private ChunkKeySet chunkArea(World world, boolean active) {
+        LoaderTable loaders = loadersByWorld.get(world.getUID());
+        if (loaders == null || loaders.isEmpty()) {
+            return ChunkKeySet.empty();
         }
-        for (Map.Entry<ChunkLoaderLocation, ChunkLoaderState> entry : loaders.entrySet()) {
-            if (entry.getValue() != null && entry.getValue().isActive()) {
-                continue;
+        // Sized for the matching loaders without overlap, capped since neighbouring
+        // loaders usually overlap; the set grows if that is too small.
+        long estimate = 0L;
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            if (loaders.is(slot, LoaderTable.ACTIVE) == active) {
+                long side = coverageRadius(loaders.tier(slot)) * 2L + 1L;
+                estimate += side * side;
             }
-            ChunkLoaderLocation loader = entry.getKey();
-            int centerX = Math.floorDiv(loader.x(), 16);
-            int centerZ = Math.floorDiv(loader.z(), 16);
-            for (int dx = -radius; dx <= radius; dx++) {
-                for (int dz = -radius; dz <= radius; dz++) {
-                    inactive.add(new ChunkCoordinate(centerX + dx, centerZ + dz));
-                }
+        }
+        if (estimate == 0L) {
+            return ChunkKeySet.empty();
+        }
+        ChunkKeySet area = new ChunkKeySet((int) Math.min(estimate, MAX_AREA_PRESIZE));
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            if (loaders.is(slot, LoaderTable.ACTIVE) == active) {
+                forEachChunk(loaders.position(slot), coverageRadius(loaders.tier(slot)), area::add);
             }
         }
-        return inactive;
+        return area;
     }
 
-    public Map<ChunkLoaderLocation, ChunkLoaderState> getLoaderStates(UUID worldId) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(worldId);
-        if (loaders == null) {
-            return Map.of();
+    /**
+     * Returns the published view of a world's loaders, or {@code null} if the world is
+     * not loaded. Safe to call from any thread.
+     */
+    public LoaderView getLoaderView(UUID worldId) {
+        return views.get(worldId);
+    }
+
+    /**
+     * Returns the published views of every loaded world. Safe to call from any thread.
+     */
+    public Collection<LoaderView> getLoaderViews() {
+        return views.values();
+    }
+
+    /**
+     * Publishes fresh views of the loaders of one world, or of all of them when
+     * {@code world} is {@code null}. Worlds whose loaders did not change since their
+     * view was published keep it, and a new view shares the arrays of the loader table
+     * until the table changes again, so publishing copies nothing up front.
+     */
+    private void publishViews(World world) {
+        Map<UUID, LoaderView> current = views;
+        Map<UUID, LoaderView> next = new HashMap<>();
+        if (world != null) {
+            next.putAll(current);
+            next.remove(world.getUID());
+        }
+        long version = viewVersion + 1;
+        boolean changed = false;
+        for (Map.Entry<UUID, LoaderTable> entry : loadersByWorld.entrySet()) {
+            if (world != null && !entry.getKey().equals(world.getUID())) {
+                continue;
+            }
+            LoaderView view = current.get(entry.getKey());
+            if (view == null || entry.getValue().changedSinceSnapshot()) {
+                World loaded = world != null ? world : Bukkit.getWorld(entry.getKey());
+                String name = loaded != null ? loaded.getName() : entry.getKey().toString();
+                view = new LoaderView(entry.getValue().snapshot(), name, version);
+                changed = true;
+            }
+            next.put(entry.getKey(), view);
         }
-        Map<ChunkLoaderLocation, ChunkLoaderState> copy = new HashMap<>();
-        for (Map.Entry<ChunkLoaderLocation, ChunkLoaderState> entry : loaders.entrySet()) {
-            copy.put(entry.getKey(), entry.getValue() == null ? null : new ChunkLoaderState(entry.getValue()));
+        if (changed || !next.keySet().equals(current.keySet())) {
+            viewVersion = version;
+            views = Map.copyOf(next);
         }
-        return Map.copyOf(copy);
     }
 
     public boolean isLoaderActive(ChunkLoaderLocation location) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
         if (loaders == null) {
             return false;
         }
-        ChunkLoaderState state = loaders.get(location);
-        return state != null && state.isActive();
+        int slot = loaders.find(location.position());
+        return slot >= 0 && loaders.is(slot, LoaderTable.ACTIVE);
     }
 
     public boolean isLoaderActive(Block block) {
-        ChunkLoaderLocation location = new ChunkLoaderLocation(block.getWorld().getUID(), block.getX(), block.getY(), block.getZ());
-        return isLoaderActive(location);
+        LoaderTable loaders = loadersOf(block.getWorld());
+        int slot = loaders == null ? -1 : loaders.find(ChunkLoaderLocation.pack(block.getX(), block.getY(), block.getZ()));
+        return slot >= 0 && loaders.is(slot, LoaderTable.ACTIVE);
     }
 
-    public void setLoaderActive(ChunkLoaderLocation location, boolean active) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
+    /**
+     * Turns a loader on or off. The new state is visible right away; the returned
+     * future completes once it has been applied with the other changes of the tick.
+     */
+    public CompletableFuture<Void> setLoaderActive(ChunkLoaderLocation location, boolean active) {
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
         if (loaders == null) {
-            return;
+            return whenApplied();
         }
-        ChunkLoaderState state = loaders.get(location);
-        if (state == null || state.isActive() == active) {
-            return;
+        int slot = loaders.find(location.position());
+        if (slot < 0 || loaders.is(slot, LoaderTable.ACTIVE) == active) {
+            return whenApplied();
         }
-        state.setActive(active);
-        save();
+        loaders.set(slot, LoaderTable.ACTIVE, active);
+        record(JournalEntry.active(location.worldId(), location.x(), location.y(), location.z(), active));
+        warmUp.cancel(location);
         World world = Bukkit.getWorld(location.worldId());
         if (world != null) {
-            applyForcedChunks(world);
-            notifyListeners(world);
+            if (active ? !deferUntilGenerated(world, location, coverageRadius(loaders.tier(slot)))
+                : !pregeneration.cancel(location)) {
+                changes().cover(location, active, coverageRadius(loaders.tier(slot)));
+            }
+            changes().syncEmulation(location);
         } else {
-            applyForcedChunks();
-            notifyListeners(null);
+            changes().touchAll();
         }
+        return whenApplied();
     }
 
     public boolean toggleLoader(ChunkLoaderLocation location) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
-        if (loaders == null || !loaders.containsKey(location)) {
+        if (!hasLoader(location)) {
             return false;
         }
         boolean currentlyActive = isLoaderActive(location);
@@ -422,73 +1237,108 @@ public class ChunkLoaderManager {
     }
 
     public ChunkLoaderState getLoaderState(ChunkLoaderLocation location) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
+        return findState(location);
+    }
+
+    /**
+     * Returns a copy of the state of the loader, or {@code null} if there is none.
+     */
+    private ChunkLoaderState findState(ChunkLoaderLocation location) {
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
         if (loaders == null) {
             return null;
         }
-        ChunkLoaderState state = loaders.get(location);
-        if (state == null) {
-            return null;
-        }
-        return new ChunkLoaderState(state);
+        int slot = loaders.find(location.position());
+        return slot < 0 ? null : loaders.state(slot);
     }
 
     public boolean hasLoader(ChunkLoaderLocation location) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
-        return loaders != null && loaders.containsKey(location);
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
+        return loaders != null && loaders.contains(location.position());
     }
 
     public boolean isPlayerEmulationEnabled(ChunkLoaderLocation location) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
         if (loaders == null) {
             return false;
         }
-        ChunkLoaderState state = loaders.get(location);
-        return state != null && state.isPlayerEmulationEnabled();
+        int slot = loaders.find(location.position());
+        return slot >= 0 && loaders.is(slot, LoaderTable.PLAYER_EMULATION);
     }
 
-    public boolean setPlayerEmulation(ChunkLoaderLocation location, boolean emulate) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
-        if (loaders == null) {
-            return false;
+    /**
+     * Turns the simulated player of a loader on or off, unless the server cannot
+     * simulate players. The new state is visible right away; the returned future
+     * completes once the player has been spawned or removed.
+     */
+    public CompletableFuture<Void> setPlayerEmulation(ChunkLoaderLocation location, boolean emulate) {
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
+        int slot = loaders == null ? -1 : loaders.find(location.position());
+        if (slot < 0 || loaders.is(slot, LoaderTable.PLAYER_EMULATION) == emulate
+            || (emulate && !playerEmulationController.isSupported())) {
+            return whenApplied();
         }
-        ChunkLoaderState state = loaders.get(location);
-        if (state == null) {
-            return false;
+        String name = loaders.name(slot);
+        if (emulate && (name == null || name.isBlank())) {
+            name = LoaderTable.generatedName(location.worldId(), location.x(), location.y(), location.z());
+            loaders.setName(slot, name);
+            record(JournalEntry.name(location.worldId(), location.x(), location.y(), location.z(), name));
         }
-        if (state.isPlayerEmulationEnabled() == emulate) {
-            return true;
+        loaders.set(slot, LoaderTable.PLAYER_EMULATION, emulate);
+        record(JournalEntry.emulation(location.worldId(), location.x(), location.y(), location.z(), emulate));
+        if (Bukkit.getWorld(location.worldId()) != null) {
+            changes().syncEmulation(location);
+        } else {
+            changes().touchAll();
         }
-        if (emulate && !playerEmulationController.isSupported()) {
-            return false;
+        return whenApplied();
+    }
+
+    /**
+     * Changes how much of its area a loader keeps running. The new tier is visible right
+     * away; the loader's old area is released and its new one forced with the other
+     * changes of the tick, when the returned future completes.
+     */
+    public CompletableFuture<Void> setTier(ChunkLoaderLocation location, LoaderTier tier) {
+        LoaderTable loaders = loadersByWorld.get(location.worldId());
+        int slot = loaders == null ? -1 : loaders.find(location.position());
+        if (slot < 0 || loaders.tier(slot) == tier) {
+            return whenApplied();
         }
-        if (emulate && (state.getSimulatedPlayerName() == null || state.getSimulatedPlayerName().isBlank())) {
-            state.setSimulatedPlayerName(generateSimulatedPlayerName(location));
+        LoaderTier previous = loaders.tier(slot);
+        loaders.set(slot, LoaderTable.KEEP_LOADED, tier == LoaderTier.LOADED);
+        record(JournalEntry.tier(location.worldId(), location.x(), location.y(), location.z(), tier == LoaderTier.LOADED));
+        changes().touch(location.worldId());
+        if (!loaders.is(slot, LoaderTable.ACTIVE)) {
+            return whenApplied();
         }
-        state.setPlayerEmulationEnabled(emulate);
-        save();
+        warmUp.cancel(location);
         World world = Bukkit.getWorld(location.worldId());
-        if (world != null) {
-            applyForcedChunks(world);
-            notifyListeners(world);
+        if (world == null) {
+            changes().touchAll();
+        } else if (pregeneration.cancel(location)) {
+            // Still waiting for its old area to be generated; wait for the new one instead.
+            if (!deferUntilGenerated(world, location, coverageRadius(tier))) {
+                changes().cover(location, true, coverageRadius(tier));
+            }
         } else {
-            applyForcedChunks();
-            notifyListeners(null);
+            changes().cover(location, false, coverageRadius(previous));
+            changes().cover(location, true, coverageRadius(tier));
         }
-        return true;
+        changes().syncEmulation(location);
+        return whenApplied();
     }
 
+    /**
+     * Flips the simulated player of a loader and returns whether it is enabled now,
+     * which stays {@code false} if the server cannot simulate players.
+     */
     public boolean togglePlayerEmulation(ChunkLoaderLocation location) {
-        Map<ChunkLoaderLocation, ChunkLoaderState> loaders = loadersByWorld.get(location.worldId());
-        if (loaders == null || !loaders.containsKey(location)) {
-            return false;
-        }
-        ChunkLoaderState state = loaders.get(location);
-        boolean target = state == null || !state.isPlayerEmulationEnabled();
-        if (!setPlayerEmulation(location, target)) {
+        if (!hasLoader(location)) {
             return false;
         }
-        return target;
+        setPlayerEmulation(location, !isPlayerEmulationEnabled(location));
+        return isPlayerEmulationEnabled(location);
     }
 
     public boolean canEmulatePlayers() {
@@ -499,28 +1349,14 @@ public class ChunkLoaderManager {
         playerEmulationController.clearAll();
     }
 
-    private String generateSimulatedPlayerName(ChunkLoaderLocation location) {
-        long hash = 1469598103934665603L;
-        hash = mixHash(hash, location.worldId().getMostSignificantBits());
-        hash = mixHash(hash, location.worldId().getLeastSignificantBits());
-        hash = mixHash(hash, location.x());
-        hash = mixHash(hash, location.y());
-        hash = mixHash(hash, location.z());
-        String base = Long.toUnsignedString(hash, 36).toUpperCase(Locale.ROOT);
-        String name = "CL" + base;
-        if (name.length() > 16) {
-            name = name.substring(0, 16);
+    /**
+     * Memory taken by the loaders of one world: the loader table, the spatial grid
+     * and the coverage counts of its forced chunks.
+     */
+    public record MemoryUsage(int loaders, int capacity, int storedNames, long tableBytes, long gridBytes,
+                              int coveredChunks, long coverageBytes) {
+        public long totalBytes() {
+            return tableBytes + gridBytes + coverageBytes;
         }
-        while (name.length() < 3) {
-            name = name + "0";
-        }
-        return name;
-    }
-
-    private long mixHash(long current, long value) {
-        current ^= value;
-        current *= 1099511628211L;
-        return current;
     }
-
 }
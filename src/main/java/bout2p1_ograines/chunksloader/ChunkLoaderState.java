@@ -1,45 +1,40 @@
 package bout2p1_ograines.chunksloader;
 
 /**
- * Represents the state of a chunk loader, including whether it is active and whether
- * it should emulate a player.
+ * Represents the state of a chunk loader, including whether it is active, whether
+ * it should emulate a player and which {@link LoaderTier} it runs at. States are
+ * immutable values, so they can be shared between threads.
  */
 public final class ChunkLoaderState {
-    private boolean active;
-    private boolean playerEmulationEnabled;
-    private String simulatedPlayerName;
+    private final boolean active;
+    private final boolean playerEmulationEnabled;
+    private final String simulatedPlayerName;
+    private final LoaderTier tier;
 
     public ChunkLoaderState(boolean active, boolean playerEmulationEnabled, String simulatedPlayerName) {
+        this(active, playerEmulationEnabled, simulatedPlayerName, LoaderTier.TICKING);
+    }
+
+    public ChunkLoaderState(boolean active, boolean playerEmulationEnabled, String simulatedPlayerName, LoaderTier tier) {
         this.active = active;
         this.playerEmulationEnabled = playerEmulationEnabled;
         this.simulatedPlayerName = simulatedPlayerName;
-    }
-
-    public ChunkLoaderState(ChunkLoaderState other) {
-        this(other.active, other.playerEmulationEnabled, other.simulatedPlayerName);
+        this.tier = tier;
     }
 
     public boolean isActive() {
         return active;
     }
 
-    public void setActive(boolean active) {
-        this.active = active;
-    }
-
     public boolean isPlayerEmulationEnabled() {
         return playerEmulationEnabled;
     }
 
-    public void setPlayerEmulationEnabled(boolean playerEmulationEnabled) {
-        this.playerEmulationEnabled = playerEmulationEnabled;
-    }
-
     public String getSimulatedPlayerName() {
         return simulatedPlayerName;
     }
 
-    public void setSimulatedPlayerName(String simulatedPlayerName) {
-        this.simulatedPlayerName = simulatedPlayerName;
+    public LoaderTier getTier() {
+        return tier;
     }
 }
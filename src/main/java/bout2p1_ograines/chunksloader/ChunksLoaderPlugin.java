@@ -3,9 +3,13 @@ package bout2p1_ograines.chunksloader;
 import bout2p1_ograines.chunksloader.map.LoaderData;
 import bout2p1_ograines.chunksloader.map.MapIntegrationManager;
 import bout2p1_ograines.chunksloader.ChunkLoaderState;
+import bout2p1_ograines.chunksloader.storage.LoaderRecord;
+import bout2p1_ograines.chunksloader.storage.SqliteStorageBackend;
+import bout2p1_ograines.chunksloader.storage.WriteBehindWriter;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.block.Block;
@@ -14,11 +18,16 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.SpawnChangeEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.World;
 import org.bukkit.inventory.ItemFlag;
 import org.bukkit.inventory.ItemStack;
@@ -32,16 +41,37 @@ import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
     private static final String CONFIG_RADIUS = "loader-radius";
     private static final String CONFIG_MAP_RADIUS = "map-radius";
+    private static final String CONFIG_SAVE_INTERVAL = "save-interval-ticks";
+    private static final String CONFIG_JOURNAL_COMPACTION = "journal-compaction-size-kb";
+    private static final String CONFIG_STORAGE_TYPE = "storage-type";
+    private static final String CONFIG_FORCED_CHUNK_HANDOVER = "forced-chunk-handover";
+    private static final String CONFIG_CHUNK_TICKETS = "use-chunk-tickets";
+    private static final String CONFIG_RELEASE_GRACE = "release-grace-seconds";
+    private static final String CONFIG_REGION_ORDER = "region-ordered-activation";
+    private static final String CONFIG_GENERATION_RATE = "generation-chunks-per-tick";
+    private static final String CONFIG_WARM_UP_RATE = "warm-up-chunks-per-second";
+    private static final String CONFIG_FORCED_CHUNK_UPDATES = "forced-chunk-updates-per-tick";
+    private static final String CONFIG_FORCED_CHUNK_BUDGET = "forced-chunk-budget-ms";
+    private static final int QUERY_RESULT_LIMIT = 10;
+    private static final int NEAR_DEFAULT_RADIUS = 16;
+    private static final int NEAR_MAX_RADIUS = 256;
+    private static final DateTimeFormatter EXPORT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
     private static final String MENU_TITLE = ChatColor.DARK_GREEN + "Chunk Loader";
     private static final int MENU_SIZE = 9;
+    private static final int TIER_SLOT = 2;
     private static final int TOGGLE_SLOT = 4;
     private static final int PLAYER_SLOT = 6;
     private static final int CLOSE_SLOT = 8;
@@ -50,7 +80,19 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
     private ChunkLoaderManager manager;
     private int loaderRadius;
     private int mapRadius;
+    private int saveIntervalTicks;
+    private int journalCompactionKb;
+    private String storageType;
+    private boolean forcedChunkHandover;
+    private boolean useChunkTickets;
+    private int releaseGraceSeconds;
+    private boolean regionOrderedActivation;
+    private int generationChunksPerTick;
+    private int warmUpChunksPerSecond;
+    private int forcedChunkUpdatesPerTick;
+    private int forcedChunkBudgetMillis;
     private MapIntegrationManager mapIntegrationManager;
+    private LoaderTransfer transfer;
 
     @Override
     public void onEnable() {
@@ -59,11 +101,11 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
 
         this.itemKey = new NamespacedKey(this, "chunk_loader_item");
         this.manager = new ChunkLoaderManager(this);
+        this.transfer = new LoaderTransfer(this, manager);
         this.mapIntegrationManager = new MapIntegrationManager(this);
         manager.addListener(mapIntegrationManager);
         mapIntegrationManager.initialize();
         manager.load();
-        mapIntegrationManager.updateAll();
 
         Bukkit.getPluginManager().registerEvents(this, this);
 
@@ -79,6 +121,20 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
             if (args.length == 1) {
                 completions.add("give");
                 completions.add("map");
+                completions.add("stats");
+                completions.add("query");
+                completions.add("generation");
+                completions.add("near");
+                completions.add("memory");
+                completions.add("tp");
+                completions.add("export");
+                completions.add("import");
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("import")) {
+                completions.addAll(transfer.listFiles());
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("query")) {
+                for (World world : Bukkit.getWorlds()) {
+                    completions.add(world.getName());
+                }
             } else if (args.length == 2 && args[0].equalsIgnoreCase("give")) {
                 for (Player player : Bukkit.getOnlinePlayers()) {
                     completions.add(player.getName());
@@ -95,9 +151,13 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
             mapIntegrationManager.shutdown();
             mapIntegrationManager = null;
         }
-        manager.clearAllPlayerEmulators();
-        manager.clearAllForcedChunks();
-        manager.save();
+        if (forcedChunkHandover && !useChunkTickets) {
+            manager.handOverForcedChunks();
+        } else {
+            manager.clearAllPlayerEmulators();
+            manager.clearAllForcedChunks();
+        }
+        manager.shutdown();
     }
 
     public ChunkLoaderManager getManager() {
@@ -112,23 +172,65 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
         return mapRadius;
     }
 
+    public int getSaveIntervalTicks() {
+        return saveIntervalTicks;
+    }
+
+    public long getJournalCompactionBytes() {
+        return journalCompactionKb * 1024L;
+    }
+
+    public String getStorageType() {
+        return storageType;
+    }
+
+    public boolean isForcedChunkHandover() {
+        return forcedChunkHandover;
+    }
+
+    public boolean isUsingChunkTickets() {
+        return useChunkTickets;
+    }
+
+    public long getReleaseGraceTicks() {
+        return releaseGraceSeconds * 20L;
+    }
+
+    public boolean isRegionOrderedActivation() {
+        return regionOrderedActivation;
+    }
+
+    public int getGenerationChunksPerTick() {
+        return generationChunksPerTick;
+    }
+
+    public int getWarmUpChunksPerSecond() {
+        return warmUpChunksPerSecond;
+    }
+
+    public int getForcedChunkUpdatesPerTick() {
+        return forcedChunkUpdatesPerTick;
+    }
+
+    public int getForcedChunkBudgetMillis() {
+        return forcedChunkBudgetMillis;
+    }
+
     public List<LoaderData> getLoaderData() {
         List<LoaderData> loaders = new ArrayList<>();
-        int radius = getLoaderRadius();
-        int diameter = (radius * 2) + 1;
-        int chunkCount = diameter * diameter;
-        for (World world : Bukkit.getWorlds()) {
-            Map<ChunkLoaderLocation, ChunkLoaderState> states = manager.getLoaderStates(world.getUID());
-            for (Map.Entry<ChunkLoaderLocation, ChunkLoaderState> entry : states.entrySet()) {
-                ChunkLoaderLocation location = entry.getKey();
-                boolean active = entry.getValue() != null && entry.getValue().isActive();
+        for (LoaderView view : manager.getLoaderViews()) {
+            view.forEach((location, state) -> {
+                boolean active = state.isActive();
+                int radius = manager.coverageRadius(state.getTier());
+                int diameter = (radius * 2) + 1;
+                int chunkCount = diameter * diameter;
                 int chunkX = Math.floorDiv(location.x(), 16);
                 int chunkZ = Math.floorDiv(location.z(), 16);
-                String id = world.getUID() + ":" + location.x() + ":" + location.y() + ":" + location.z();
+                String id = view.getWorldId() + ":" + location.x() + ":" + location.y() + ":" + location.z();
                 String plainName = "Chunk Loader";
                 loaders.add(new LoaderData(
                     id,
-                    world.getName(),
+                    view.getWorldName(),
                     location.x(),
                     location.y(),
                     location.z(),
@@ -142,7 +244,7 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
                     null,
                     0L
                 ));
-            }
+            });
         }
         return loaders;
     }
@@ -151,10 +253,32 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
         FileConfiguration configuration = getConfig();
         configuration.addDefault(CONFIG_RADIUS, 1);
         configuration.addDefault(CONFIG_MAP_RADIUS, 5);
+        configuration.addDefault(CONFIG_SAVE_INTERVAL, 20);
+        configuration.addDefault(CONFIG_JOURNAL_COMPACTION, 512);
+        configuration.addDefault(CONFIG_STORAGE_TYPE, "binary");
+        configuration.addDefault(CONFIG_FORCED_CHUNK_HANDOVER, false);
+        configuration.addDefault(CONFIG_CHUNK_TICKETS, false);
+        configuration.addDefault(CONFIG_RELEASE_GRACE, 10);
+        configuration.addDefault(CONFIG_REGION_ORDER, true);
+        configuration.addDefault(CONFIG_GENERATION_RATE, 1);
+        configuration.addDefault(CONFIG_WARM_UP_RATE, 200);
+        configuration.addDefault(CONFIG_FORCED_CHUNK_UPDATES, 64);
+        configuration.addDefault(CONFIG_FORCED_CHUNK_BUDGET, 5);
         configuration.options().copyDefaults(true);
         saveConfig();
         loaderRadius = Math.max(0, configuration.getInt(CONFIG_RADIUS, 1));
         mapRadius = Math.max(1, configuration.getInt(CONFIG_MAP_RADIUS, 5));
+        saveIntervalTicks = Math.max(1, configuration.getInt(CONFIG_SAVE_INTERVAL, 20));
+        journalCompactionKb = Math.max(1, configuration.getInt(CONFIG_JOURNAL_COMPACTION, 512));
+        storageType = configuration.getString(CONFIG_STORAGE_TYPE, "binary").toLowerCase(Locale.ROOT);
+        forcedChunkHandover = configuration.getBoolean(CONFIG_FORCED_CHUNK_HANDOVER, false);
+        useChunkTickets = configuration.getBoolean(CONFIG_CHUNK_TICKETS, false);
+        releaseGraceSeconds = Math.max(0, configuration.getInt(CONFIG_RELEASE_GRACE, 10));
+        regionOrderedActivation = configuration.getBoolean(CONFIG_REGION_ORDER, true);
+        generationChunksPerTick = Math.max(1, configuration.getInt(CONFIG_GENERATION_RATE, 1));
+        warmUpChunksPerSecond = Math.max(0, configuration.getInt(CONFIG_WARM_UP_RATE, 200));
+        forcedChunkUpdatesPerTick = Math.max(1, configuration.getInt(CONFIG_FORCED_CHUNK_UPDATES, 64));
+        forcedChunkBudgetMillis = Math.max(1, configuration.getInt(CONFIG_FORCED_CHUNK_BUDGET, 5));
     }
 
     public ItemStack createChunkLoaderItem() {
@@ -188,7 +312,7 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (args.length == 0) {
-            sender.sendMessage(ChatColor.RED + "/" + label + " give [player]" + ChatColor.GRAY + " or " + ChatColor.RED + "/" + label + " map");
+            sender.sendMessage(ChatColor.RED + "/" + label + " give [player]" + ChatColor.GRAY + " or " + ChatColor.RED + "/" + label + " map" + ChatColor.GRAY + " or " + ChatColor.RED + "/" + label + " stats");
             return true;
         }
 
@@ -224,21 +348,318 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
                 sender.sendMessage(ChatColor.RED + "This command is only available to players.");
                 return true;
             }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
             showMap(player);
             return true;
         }
 
+        if (args[0].equalsIgnoreCase("stats")) {
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            showStats(sender);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("generation")) {
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            showGeneration(sender);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("memory")) {
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            showMemory(sender);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("near") || args[0].equalsIgnoreCase("tp")) {
+            if (!(sender instanceof Player player)) {
+                sender.sendMessage(ChatColor.RED + "This command is only available to players.");
+                return true;
+            }
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            if (args[0].equalsIgnoreCase("near")) {
+                showNearbyLoaders(player, label, args);
+            } else {
+                teleportToNearestLoader(player);
+            }
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("query")) {
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            runStorageQuery(sender, label, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("export")) {
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            String name = args.length >= 2 ? args[1] : "loaders-" + EXPORT_NAME_FORMAT.format(LocalDateTime.now());
+            transfer.export(sender, name);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("import")) {
+            if (!sender.hasPermission("chunksloader.admin")) {
+                sender.sendMessage(ChatColor.RED + "You do not have permission.");
+                return true;
+            }
+            if (args.length != 2) {
+                sender.sendMessage(ChatColor.RED + "/" + label + " import <file>");
+                return true;
+            }
+            if (rejectWhileLoading(sender)) {
+                return true;
+            }
+            transfer.importFile(sender, args[1]);
+            return true;
+        }
+
         sender.sendMessage(ChatColor.RED + "Unknown sub-command.");
         return true;
     }
 
+    private boolean rejectWhileLoading(CommandSender sender) {
+        if (manager.isReady()) {
+            return false;
+        }
+        sender.sendMessage(ChatColor.RED + "Chunk loaders are still loading, please try again in a moment.");
+        return true;
+    }
+
+    private void showStats(CommandSender sender) {
+        WriteBehindWriter writer = manager.getWriter();
+        sender.sendMessage(ChatColor.YELLOW + "Chunk loader statistics:");
+        sender.sendMessage(ChatColor.GRAY + "Loaders: " + ChatColor.WHITE + manager.getLoaderCount()
+            + ChatColor.GRAY + ", forced chunks: " + ChatColor.WHITE + manager.getForcedChunkCount());
+        ForcedChunkQueue chunkQueue = manager.getChunkQueue();
+        sender.sendMessage(ChatColor.GRAY + "Chunk queue: " + ChatColor.WHITE + chunkQueue.getPendingCount() + " pending ("
+            + chunkQueue.getUrgentCount() + " urgent), " + chunkQueue.getLastTickUpdates() + " applied last tick, "
+            + chunkQueue.getAppliedTotal() + " total" + (chunkQueue.isAsyncLoading()
+            ? ", " + chunkQueue.getLoadingCount() + " loading asynchronously" : ""));
+        LoaderWarmUp warmUp = manager.getWarmUp();
+        if (warmUp.isRunning()) {
+            sender.sendMessage(ChatColor.GRAY + "Warm-up: " + ChatColor.WHITE + "running for " + formatMillis(warmUp.getElapsedNanos()) + ", "
+                + warmUp.getRemainingLoaders() + "/" + warmUp.getTotalLoaders() + " loader(s) and "
+                + chunkQueue.getWarmUpCount() + "/" + warmUp.getTotalChunks() + " chunk(s) left");
+        } else if (warmUp.getElapsedNanos() >= 0L) {
+            sender.sendMessage(ChatColor.GRAY + "Warm-up: " + ChatColor.WHITE + "took " + formatMillis(warmUp.getElapsedNanos()) + " for "
+                + warmUp.getTotalLoaders() + " loader(s) and " + warmUp.getTotalChunks() + " chunk(s)");
+        }
+        sender.sendMessage(ChatColor.GRAY + "Release grace: " + ChatColor.WHITE + chunkQueue.getHeldCount() + " chunk(s) held, "
+            + chunkQueue.getAvoidedReloads() + " reload(s) avoided");
+        sender.sendMessage(ChatColor.GRAY + "Save queue: " + ChatColor.WHITE + writer.getPendingEntries() + " pending change(s), "
+            + writer.getQueuedTasks() + " write(s) in flight");
+        sender.sendMessage(ChatColor.GRAY + "Storage: " + ChatColor.WHITE + writer.getBackend().getName() + ", "
+            + (writer.getBacklogBytes() / 1024L) + " KiB since last compaction, "
+            + writer.getCompletedCompactions() + " compaction(s), last " + formatMillis(writer.getLastCompactionNanos()));
+        sender.sendMessage(ChatColor.GRAY + "Flushes: " + ChatColor.WHITE + writer.getCompletedFlushes() + " completed, "
+            + writer.getFailedSaves() + " failed");
+        sender.sendMessage(ChatColor.GRAY + "Flush latency: " + ChatColor.WHITE + "last " + formatMillis(writer.getLastFlushNanos())
+            + ", avg " + formatMillis(writer.getAverageFlushNanos()) + ", max " + formatMillis(writer.getMaxFlushNanos()));
+    }
+
+    private void showGeneration(CommandSender sender) {
+        PregenerationQueue pregeneration = manager.getPregeneration();
+        Map<ChunkLoaderLocation, Integer> pending = pregeneration.getPending();
+        if (pending.isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "No chunk loader is waiting for terrain generation ("
+                + pregeneration.getGeneratedTotal() + " chunk(s) generated so far).");
+            return;
+        }
+        sender.sendMessage(ChatColor.YELLOW + "" + pending.size() + " chunk loader(s) waiting for " + pregeneration.getPendingChunks()
+            + " chunk(s) to be generated, " + generationChunksPerTick + " per tick:");
+        int shown = 0;
+        for (Map.Entry<ChunkLoaderLocation, Integer> entry : pending.entrySet()) {
+            if (shown++ == QUERY_RESULT_LIMIT) {
+                sender.sendMessage(ChatColor.GRAY + "... and " + (pending.size() - QUERY_RESULT_LIMIT) + " more.");
+                break;
+            }
+            ChunkLoaderLocation location = entry.getKey();
+            World world = Bukkit.getWorld(location.worldId());
+            sender.sendMessage(ChatColor.GRAY + "- " + (world != null ? world.getName() : location.worldId()) + " "
+                + location.x() + ", " + location.y() + ", " + location.z() + ChatColor.WHITE + " " + entry.getValue() + " chunk(s) left");
+        }
+    }
+
+    private void showMemory(CommandSender sender) {
+        sender.sendMessage(ChatColor.YELLOW + "Chunk loader memory:");
+        int loaders = 0;
+        long total = 0L;
+        for (World world : Bukkit.getWorlds()) {
+            ChunkLoaderManager.MemoryUsage usage = manager.getMemoryUsage(world.getUID());
+            if (usage == null || usage.loaders() == 0) {
+                continue;
+            }
+            loaders += usage.loaders();
+            total += usage.totalBytes();
+            sender.sendMessage(ChatColor.GRAY + "- " + world.getName() + ": " + ChatColor.WHITE + usage.loaders() + " loader(s) in "
+                + usage.capacity() + " slots, " + usage.storedNames() + " stored name(s), " + formatKib(usage.tableBytes()) + " table, "
+                + formatKib(usage.gridBytes()) + " grid, " + usage.coveredChunks() + " covered chunk(s) " + formatKib(usage.coverageBytes()));
+        }
+        if (loaders == 0) {
+            sender.sendMessage(ChatColor.GRAY + "No chunk loader is loaded.");
+            return;
+        }
+        sender.sendMessage(ChatColor.GRAY + "Total: " + ChatColor.WHITE + formatKib(total) + " for " + loaders + " loader(s), "
+            + (total / loaders) + " bytes per loader");
+    }
+
+    private static String formatKib(long bytes) {
+        return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0d);
+    }
+
+    private void showNearbyLoaders(Player player, String label, String[] args) {
+        int radius = NEAR_DEFAULT_RADIUS;
+        if (args.length >= 2) {
+            try {
+                radius = Integer.parseInt(args[1]);
+            } catch (NumberFormatException exception) {
+                player.sendMessage(ChatColor.RED + "/" + label + " near [radius]");
+                return;
+            }
+            radius = Math.max(0, Math.min(NEAR_MAX_RADIUS, radius));
+        }
+        Location location = player.getLocation();
+        List<ChunkLoaderLocation> loaders = manager.getLoadersNear(player.getWorld(),
+            Math.floorDiv(location.getBlockX(), 16), Math.floorDiv(location.getBlockZ(), 16), radius);
+        if (loaders.isEmpty()) {
+            player.sendMessage(ChatColor.GRAY + "No chunk loader within " + radius + " chunk(s).");
+            return;
+        }
+        player.sendMessage(ChatColor.YELLOW + "" + loaders.size() + " chunk loader(s) within " + radius + " chunk(s):");
+        for (ChunkLoaderLocation loader : loaders.subList(0, Math.min(loaders.size(), QUERY_RESULT_LIMIT))) {
+            ChunkLoaderState state = manager.getLoaderState(loader);
+            long distance = Math.round(Math.hypot(loader.x() + 0.5d - location.getX(), loader.z() + 0.5d - location.getZ()));
+            player.sendMessage(ChatColor.GRAY + "- " + loader.x() + ", " + loader.y() + ", " + loader.z() + ChatColor.WHITE + " " + distance + "m"
+                + (state != null && state.isActive() ? ChatColor.GREEN + " active" : ChatColor.GOLD + " disabled")
+                + (state != null && state.getTier() == LoaderTier.LOADED ? ChatColor.AQUA + " keep loaded" : ""));
+        }
+        if (loaders.size() > QUERY_RESULT_LIMIT) {
+            player.sendMessage(ChatColor.GRAY + "... and " + (loaders.size() - QUERY_RESULT_LIMIT) + " more.");
+        }
+    }
+
+    private void teleportToNearestLoader(Player player) {
+        ChunkLoaderLocation loader = manager.getNearestLoader(player.getLocation());
+        if (loader == null) {
+            player.sendMessage(ChatColor.GRAY + "There is no chunk loader in this world.");
+            return;
+        }
+        Location current = player.getLocation();
+        Location target = new Location(player.getWorld(), loader.x() + 0.5d, loader.y() + 1.0d, loader.z() + 0.5d,
+            current.getYaw(), current.getPitch());
+        player.teleport(target);
+        player.sendMessage(ChatColor.GREEN + "Teleported to the chunk loader at " + loader.x() + ", " + loader.y() + ", " + loader.z() + ".");
+    }
+
+    private void runStorageQuery(CommandSender sender, String label, String[] args) {
+        if (!(manager.getWriter().getBackend() instanceof SqliteStorageBackend database)) {
+            sender.sendMessage(ChatColor.RED + "Storage queries require storage-type: sqlite in config.yml.");
+            return;
+        }
+        if (args.length != 2 && args.length != 5) {
+            sender.sendMessage(ChatColor.RED + "/" + label + " query <world> [chunkX chunkZ radius]");
+            return;
+        }
+        World world = Bukkit.getWorld(args[1]);
+        if (world == null) {
+            sender.sendMessage(ChatColor.RED + "World not found.");
+            return;
+        }
+        UUID worldId = world.getUID();
+        String worldName = world.getName();
+        int chunkX;
+        int chunkZ;
+        int radius;
+        if (args.length == 5) {
+            try {
+                chunkX = Integer.parseInt(args[2]);
+                chunkZ = Integer.parseInt(args[3]);
+                radius = Math.max(0, Integer.parseInt(args[4]));
+            } catch (NumberFormatException exception) {
+                sender.sendMessage(ChatColor.RED + "Chunk coordinates and radius must be numbers.");
+                return;
+            }
+        } else {
+            chunkX = 0;
+            chunkZ = 0;
+            radius = -1;
+        }
+
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            List<String> lines = new ArrayList<>();
+            try {
+                if (radius < 0) {
+                    int count = database.countByWorld().getOrDefault(worldId, 0);
+                    lines.add(ChatColor.YELLOW + worldName + ChatColor.GRAY + " has " + ChatColor.WHITE + count + ChatColor.GRAY + " stored chunk loader(s).");
+                } else {
+                    List<LoaderRecord> records = database.queryArea(worldId, chunkX, chunkZ, radius);
+                    lines.add(ChatColor.YELLOW + "" + records.size() + " chunk loader(s) within " + radius + " chunk(s) of " + chunkX + ", " + chunkZ + " in " + worldName + ":");
+                    for (LoaderRecord record : records.subList(0, Math.min(records.size(), QUERY_RESULT_LIMIT))) {
+                        lines.add(ChatColor.GRAY + "- " + record.x() + ", " + record.y() + ", " + record.z()
+                            + (record.active() ? ChatColor.GREEN + " active" : ChatColor.GOLD + " disabled"));
+                    }
+                    if (records.size() > QUERY_RESULT_LIMIT) {
+                        lines.add(ChatColor.GRAY + "... and " + (records.size() - QUERY_RESULT_LIMIT) + " more.");
+                    }
+                }
+            } catch (SQLException exception) {
+                lines.add(ChatColor.RED + "Query failed: " + exception.getMessage());
+            }
+            Bukkit.getScheduler().runTask(this, () -> lines.forEach(sender::sendMessage));
+        });
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0d);
+    }
+
     private void showMap(Player player) {
         int radius = mapRadius;
         ChunkLoaderManager manager = getManager();
-        Set<ChunkCoordinate> loaded = manager.getLoadedChunkArea(player.getWorld());
-        Set<ChunkCoordinate> inactive = manager.getInactiveChunkArea(player.getWorld());
-        int centerChunkX = player.getLocation().getChunk().getX();
-        int centerChunkZ = player.getLocation().getChunk().getZ();
+        ChunkKeySet loaded = manager.getLoadedChunkArea(player.getWorld());
+        ChunkKeySet inactive = manager.getInactiveChunkArea(player.getWorld());
+        SpawnArea spawnArea = manager.getSpawnArea(player.getWorld());
+        int centerChunkX = player.getLocation().getBlockX() >> 4;
+        int centerChunkZ = player.getLocation().getBlockZ() >> 4;
         StringBuilder builder = new StringBuilder();
         builder.append(ChatColor.YELLOW).append("Loaded chunk map (" + (radius * 2 + 1) + "x" + (radius * 2 + 1) + "):");
         player.sendMessage(builder.toString());
@@ -248,17 +669,17 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
             for (int dx = -radius; dx <= radius; dx++) {
                 int chunkX = centerChunkX + dx;
                 int chunkZ = centerChunkZ + dz;
-                boolean spawn = manager.isInSpawnArea(player.getWorld(), chunkX, chunkZ);
+                boolean spawn = spawnArea.contains(chunkX, chunkZ);
                 if (spawn) {
                     row.append(ChatColor.RED).append('■');
                     continue;
                 }
-                boolean loaderChunk = loaded.contains(new ChunkCoordinate(chunkX, chunkZ));
+                boolean loaderChunk = loaded.contains(chunkX, chunkZ);
                 if (loaderChunk) {
                     row.append(ChatColor.GREEN).append('■');
                     continue;
                 }
-                if (inactive.contains(new ChunkCoordinate(chunkX, chunkZ))) {
+                if (inactive.contains(chunkX, chunkZ)) {
                     row.append(ChatColor.GOLD).append('■');
                 } else {
                     row.append(ChatColor.DARK_GRAY).append('■');
@@ -270,12 +691,39 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
         player.sendMessage(ChatColor.GREEN + "■" + ChatColor.GRAY + " = Chunk loader" + ChatColor.GOLD + "  ■" + ChatColor.GRAY + " = Disabled chunk loader" + ChatColor.RED + "  ■" + ChatColor.GRAY + " = Spawn" + ChatColor.DARK_GRAY + "  ■" + ChatColor.GRAY + " = Inactive");
     }
 
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        manager.refreshSpawnArea(event.getWorld());
+        manager.loadWorld(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        manager.unloadWorld(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onSpawnChange(SpawnChangeEvent event) {
+        manager.refreshSpawnArea(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        if (!event.isNewChunk()) {
+            manager.adoptChunk(event.getChunk());
+        }
+    }
+
     @EventHandler
     public void onBlockPlace(BlockPlaceEvent event) {
         ItemStack item = event.getItemInHand();
         if (!isChunkLoaderItem(item)) {
             return;
         }
+        if (rejectWhileLoading(event.getPlayer())) {
+            event.setCancelled(true);
+            return;
+        }
 
         if (!manager.canPlaceLoader(event.getBlockPlaced().getLocation(), loaderRadius)) {
             event.setCancelled(true);
@@ -290,15 +738,19 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
     @EventHandler
     public void onBlockBreak(BlockBreakEvent event) {
         Block block = event.getBlock();
+        if (block.getType() == Material.BEACON && rejectWhileLoading(event.getPlayer())) {
+            // Any beacon may be a chunk loader until the loaders have been read.
+            event.setCancelled(true);
+            return;
+        }
         if (!manager.isChunkLoaderBlock(block)) {
             return;
         }
 
         event.setDropItems(false);
-        if (manager.removeLoader(block)) {
-            block.getWorld().dropItemNaturally(block.getLocation(), createChunkLoaderItem());
-            event.getPlayer().sendMessage(ChatColor.YELLOW + "Chunk loader disabled.");
-        }
+        manager.removeLoader(block);
+        block.getWorld().dropItemNaturally(block.getLocation(), createChunkLoaderItem());
+        event.getPlayer().sendMessage(ChatColor.YELLOW + "Chunk loader disabled.");
     }
 
     @EventHandler
@@ -313,6 +765,10 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
             return;
         }
         Block clicked = event.getClickedBlock();
+        if (clicked.getType() == Material.BEACON && rejectWhileLoading(event.getPlayer())) {
+            event.setCancelled(true);
+            return;
+        }
         if (!manager.isChunkLoaderBlock(clicked)) {
             return;
         }
@@ -333,6 +789,8 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
         event.setCancelled(true);
         if (event.getRawSlot() == TOGGLE_SLOT) {
             handleToggle(menuHolder.getLocation(), inventory, player);
+        } else if (event.getRawSlot() == TIER_SLOT) {
+            handleTierToggle(menuHolder.getLocation(), inventory, player);
         } else if (event.getRawSlot() == PLAYER_SLOT) {
             handlePlayerEmulationToggle(menuHolder.getLocation(), inventory, player);
         } else if (event.getRawSlot() == CLOSE_SLOT) {
@@ -367,6 +825,23 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
         fillChunkLoaderMenu(inventory, location);
     }
 
+    private void handleTierToggle(ChunkLoaderLocation location, Inventory inventory, Player player) {
+        ChunkLoaderState state = manager.getLoaderState(location);
+        if (state == null) {
+            player.sendMessage(ChatColor.RED + "This chunk loader no longer exists.");
+            player.closeInventory();
+            return;
+        }
+        LoaderTier tier = state.getTier() == LoaderTier.TICKING ? LoaderTier.LOADED : LoaderTier.TICKING;
+        manager.setTier(location, tier);
+        if (tier == LoaderTier.LOADED) {
+            player.sendMessage(ChatColor.YELLOW + "Chunk loader now only keeps its area loaded.");
+        } else {
+            player.sendMessage(ChatColor.GREEN + "Chunk loader now keeps its whole area ticking.");
+        }
+        fillChunkLoaderMenu(inventory, location);
+    }
+
     private void handlePlayerEmulationToggle(ChunkLoaderLocation location, Inventory inventory, Player player) {
         if (!manager.hasLoader(location)) {
             player.sendMessage(ChatColor.RED + "This chunk loader no longer exists.");
@@ -377,9 +852,9 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
             player.sendMessage(ChatColor.RED + "This server version does not support simulated players.");
             return;
         }
-        boolean desired = manager.togglePlayerEmulation(location);
-        boolean current = manager.isPlayerEmulationEnabled(location);
-        if (desired != current) {
+        boolean previous = manager.isPlayerEmulationEnabled(location);
+        boolean current = manager.togglePlayerEmulation(location);
+        if (current == previous) {
             player.sendMessage(ChatColor.RED + "Unable to change player emulation for this chunk loader.");
         } else if (current) {
             player.sendMessage(ChatColor.GREEN + "Player emulation enabled.");
@@ -401,7 +876,7 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
     private void fillChunkLoaderMenu(Inventory inventory, ChunkLoaderLocation location) {
         ItemStack filler = createFillerItem();
         for (int slot = 0; slot < inventory.getSize(); slot++) {
-            if (slot == TOGGLE_SLOT || slot == PLAYER_SLOT || slot == CLOSE_SLOT) {
+            if (slot == TIER_SLOT || slot == TOGGLE_SLOT || slot == PLAYER_SLOT || slot == CLOSE_SLOT) {
                 continue;
             }
             inventory.setItem(slot, filler.clone());
@@ -409,17 +884,40 @@ public class ChunksLoaderPlugin extends JavaPlugin implements Listener {
         ChunkLoaderState state = manager.getLoaderState(location);
         boolean active = state != null && state.isActive();
         boolean emulate = state != null && state.isPlayerEmulationEnabled();
-        inventory.setItem(TOGGLE_SLOT, createToggleItem(active));
+        inventory.setItem(TIER_SLOT, createTierItem(state == null ? LoaderTier.TICKING : state.getTier()));
+        inventory.setItem(TOGGLE_SLOT, createToggleItem(active, active && manager.isGenerating(location)));
         inventory.setItem(PLAYER_SLOT, createPlayerEmulationItem(emulate, manager.canEmulatePlayers(), active));
         inventory.setItem(CLOSE_SLOT, createCloseItem());
     }
 
-    private ItemStack createToggleItem(boolean active) {
+    private ItemStack createTierItem(LoaderTier tier) {
+        ItemStack item = new ItemStack(tier == LoaderTier.TICKING ? Material.CLOCK : Material.CHEST);
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            if (tier == LoaderTier.TICKING) {
+                meta.setDisplayName(ChatColor.GREEN + "Tier: fully ticking");
+                meta.setLore(List.of(ChatColor.GRAY + "Entities and machines run in the whole area.",
+                    ChatColor.GRAY + "Click to only keep the area loaded."));
+            } else {
+                meta.setDisplayName(ChatColor.AQUA + "Tier: keep loaded");
+                meta.setLore(List.of(ChatColor.GRAY + "Only the loader's own chunk ticks entities;",
+                    ChatColor.GRAY + "the chunks around it stay loaded but mostly idle.",
+                    ChatColor.GRAY + "Click to keep the whole area ticking."));
+            }
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    private ItemStack createToggleItem(boolean active, boolean generating) {
         Material material = active ? Material.LIME_DYE : Material.ORANGE_DYE;
         ItemStack item = new ItemStack(material);
         ItemMeta meta = item.getItemMeta();
         if (meta != null) {
-            if (active) {
+            if (generating) {
+                meta.setDisplayName(ChatColor.YELLOW + "Chunk loader waiting for terrain");
+                meta.setLore(List.of(ChatColor.GRAY + "Its area is still being generated.", ChatColor.GRAY + "Click to disable the chunk loader."));
+            } else if (active) {
                 meta.setDisplayName(ChatColor.GREEN + "Chunk loader active");
                 meta.setLore(List.of(ChatColor.GRAY + "Click to disable the chunk loader."));
             } else {
@@ -0,0 +1,397 @@
+package bout2p1_ograines.chunksloader;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies forced chunk changes over several ticks.
+ * <p>
+ * Chunks are held either by forcing them or, when chunk tickets are enabled, with
+ * plugin chunk tickets that only this plugin can add or remove.
+ * <p>
+ * Changes are queued per chunk, so a later change to the same chunk replaces the
+ * earlier one. Every tick the queue applies changes until either the configured
+ * number of updates or the configured time budget is used up. Urgent changes, such
+ * as a single loader being placed or toggled, are applied before bulk work like the
+ * initial reconciliation after enabling. Right after the server starts, chunks
+ * can also be queued for warm-up, which is drained last and at a fixed rate per
+ * second so loaders come online in waves.
+ * <p>
+ * Chunks released by a single loader are held for a grace period first. If they are
+ * wanted again before it ends, for example because a loader was toggled back on or
+ * moved by one block, the release is cancelled and the chunk never unloads.
+ * <p>
+ * On servers that can load chunks asynchronously, a chunk that is not loaded yet is
+ * loaded in the background first and only forced once it is ready, so forcing it does
+ * not load it on the main thread.
+ * <p>
+ * Chunks can also be queued to be loaded once without forcing them, so the chunk
+ * storage can read the loaders they hold. These share the per-tick budget and are
+ * drained after the other changes but before warm-up.
+ */
+public final class ForcedChunkQueue {
+    private static final int PROGRESS_LOG_THRESHOLD = 500;
+
+    private final ChunksLoaderPlugin plugin;
+    private final LinkedHashMap<PendingChunk, Boolean> urgent = new LinkedHashMap<>();
+    private final LinkedHashMap<PendingChunk, Boolean> bulk = new LinkedHashMap<>();
+    private final LinkedHashMap<PendingChunk, Boolean> warmUp = new LinkedHashMap<>();
+    private final LinkedHashMap<PendingChunk, Long> delayed = new LinkedHashMap<>();
+    private final Map<PendingChunk, Boolean> loading = new HashMap<>();
+    private final LinkedHashSet<PendingChunk> fetches = new LinkedHashSet<>();
+    private final Method asyncChunkLoader;
+    private BukkitTask task;
+    private long tick;
+    private long avoidedReloads;
+    private double warmUpAllowance;
+    private long appliedTotal;
+    private int lastTickUpdates;
+    private int runUpdates;
+    private int runTicks;
+    private long runStart;
+
+    ForcedChunkQueue(ChunksLoaderPlugin plugin) {
+        this.plugin = plugin;
+        this.asyncChunkLoader = findAsyncChunkLoader();
+        if (asyncChunkLoader != null) {
+            plugin.getLogger().info("Asynchronous chunk loading available; chunks are loaded before they are forced.");
+        }
+    }
+
+    private static Method findAsyncChunkLoader() {
+        try {
+            Method method = World.class.getMethod("getChunkAtAsync", int.class, int.class);
+            return CompletableFuture.class.isAssignableFrom(method.getReturnType()) ? method : null;
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+
+    public boolean isAsyncLoading() {
+        return asyncChunkLoader != null;
+    }
+
+    void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+        }
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    void enqueue(UUID worldId, long key, boolean force, boolean priority) {
+        PendingChunk chunk = new PendingChunk(worldId, key);
+        if (force && delayed.remove(chunk) != null) {
+            // Still held from an earlier release; keep it instead of reloading it.
+            avoidedReloads++;
+            return;
+        }
+        if (force && loading.containsKey(chunk)) {
+            return;
+        }
+        if (!force && (loading.remove(chunk) != null || warmUp.remove(chunk) != null)) {
+            // Never forced, so there is nothing to unforce.
+            return;
+        }
+        delayed.remove(chunk);
+        loading.remove(chunk);
+        warmUp.remove(chunk);
+        if (priority) {
+            bulk.remove(chunk);
+            urgent.put(chunk, force);
+        } else {
+            urgent.remove(chunk);
+            bulk.put(chunk, force);
+        }
+    }
+
+    /**
+     * Queues a chunk to be forced during warm-up, after every other queued change.
+     */
+    void warmUp(UUID worldId, long key) {
+        PendingChunk chunk = new PendingChunk(worldId, key);
+        if (!urgent.containsKey(chunk) && !bulk.containsKey(chunk)) {
+            warmUp.put(chunk, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Queues a chunk to be loaded once, without forcing it, unless it is loaded by then.
+     */
+    void fetch(UUID worldId, long key) {
+        fetches.add(new PendingChunk(worldId, key));
+    }
+
+    boolean isWarmingUp(UUID worldId, long key) {
+        return warmUp.containsKey(new PendingChunk(worldId, key));
+    }
+
+    /**
+     * Releases a chunk once the configured grace period has passed, unless it is
+     * wanted again in the meantime.
+     */
+    void release(UUID worldId, long key) {
+        long graceTicks = plugin.getReleaseGraceTicks();
+        if (graceTicks <= 0L) {
+            enqueue(worldId, key, false, true);
+            return;
+        }
+        PendingChunk chunk = new PendingChunk(worldId, key);
+        Boolean queued = urgent.remove(chunk);
+        if (queued == null) {
+            queued = bulk.remove(chunk);
+        }
+        if (Boolean.TRUE.equals(queued) || loading.remove(chunk) != null || warmUp.remove(chunk) != null) {
+            // Never forced, so there is nothing to hold.
+            return;
+        }
+        delayed.put(chunk, tick + graceTicks);
+    }
+
+    /**
+     * Drops queued changes for a world that is no longer loaded.
+     */
+    void discard(UUID worldId) {
+        urgent.keySet().removeIf(chunk -> chunk.worldId().equals(worldId));
+        bulk.keySet().removeIf(chunk -> chunk.worldId().equals(worldId));
+        delayed.keySet().removeIf(chunk -> chunk.worldId().equals(worldId));
+        loading.keySet().removeIf(chunk -> chunk.worldId().equals(worldId));
+        warmUp.keySet().removeIf(chunk -> chunk.worldId().equals(worldId));
+        fetches.removeIf(chunk -> chunk.worldId().equals(worldId));
+    }
+
+    void clear() {
+        urgent.clear();
+        bulk.clear();
+        delayed.clear();
+        loading.clear();
+        warmUp.clear();
+        fetches.clear();
+    }
+
+    /**
+     * Returns the queued changes of a world, keyed by chunk, with {@code true} for
+     * chunks waiting to be forced and {@code false} for chunks waiting to be released,
+     * including those still in their grace period.
+     */
+    Map<Long, Boolean> getPending(UUID worldId) {
+        Map<Long, Boolean> pending = new HashMap<>();
+        for (PendingChunk chunk : delayed.keySet()) {
+            if (chunk.worldId().equals(worldId)) {
+                pending.put(chunk.key(), false);
+            }
+        }
+        for (PendingChunk chunk : loading.keySet()) {
+            if (chunk.worldId().equals(worldId)) {
+                pending.put(chunk.key(), true);
+            }
+        }
+        for (Map<PendingChunk, Boolean> queue : List.of(warmUp, bulk, urgent)) {
+            for (Map.Entry<PendingChunk, Boolean> entry : queue.entrySet()) {
+                if (entry.getKey().worldId().equals(worldId)) {
+                    pending.put(entry.getKey().key(), entry.getValue());
+                }
+            }
+        }
+        return pending;
+    }
+
+    public int getPendingCount() {
+        return urgent.size() + bulk.size();
+    }
+
+    public int getUrgentCount() {
+        return urgent.size();
+    }
+
+    public int getWarmUpCount() {
+        return warmUp.size();
+    }
+
+    public int getFetchCount() {
+        return fetches.size();
+    }
+
+    public int getLoadingCount() {
+        return loading.size();
+    }
+
+    public int getHeldCount() {
+        return delayed.size();
+    }
+
+    public long getAvoidedReloads() {
+        return avoidedReloads;
+    }
+
+    public long getAppliedTotal() {
+        return appliedTotal;
+    }
+
+    public int getLastTickUpdates() {
+        return lastTickUpdates;
+    }
+
+    private void drain() {
+        tick++;
+        Iterator<Map.Entry<PendingChunk, Long>> expired = delayed.entrySet().iterator();
+        while (expired.hasNext()) {
+            Map.Entry<PendingChunk, Long> entry = expired.next();
+            if (entry.getValue() > tick) {
+                break;
+            }
+            expired.remove();
+            urgent.put(entry.getKey(), false);
+        }
+        if (urgent.isEmpty() && bulk.isEmpty() && fetches.isEmpty() && warmUp.isEmpty()) {
+            lastTickUpdates = 0;
+            return;
+        }
+        if (runTicks == 0) {
+            runStart = System.nanoTime();
+        }
+        long deadline = System.nanoTime() + plugin.getForcedChunkBudgetMillis() * 1_000_000L;
+        int budget = plugin.getForcedChunkUpdatesPerTick();
+        int applied = drain(urgent, budget, deadline);
+        applied += drain(bulk, budget - applied, deadline);
+        applied += drainFetches(budget - applied, deadline);
+        if (!warmUp.isEmpty()) {
+            double perTick = plugin.getWarmUpChunksPerSecond() / 20.0d;
+            warmUpAllowance = Math.min(warmUpAllowance + perTick, perTick + 1.0d);
+            int warmed = drain(warmUp, Math.min(budget - applied, (int) warmUpAllowance), deadline);
+            warmUpAllowance -= warmed;
+            applied += warmed;
+        }
+        lastTickUpdates = applied;
+        appliedTotal += applied;
+        runUpdates += applied;
+        runTicks++;
+        if (urgent.isEmpty() && bulk.isEmpty() && fetches.isEmpty() && warmUp.isEmpty()) {
+            if (runUpdates >= PROGRESS_LOG_THRESHOLD) {
+                double seconds = (System.nanoTime() - runStart) / 1_000_000_000.0d;
+                plugin.getLogger().info(String.format(Locale.ROOT,
+                    "Applied %d forced chunk change(s) over %d tick(s) in %.2fs (%.0f chunks/s%s).",
+                    runUpdates, runTicks, seconds, runUpdates / Math.max(seconds, 0.001d),
+                    plugin.isRegionOrderedActivation() ? ", region ordered" : ""));
+            }
+            runUpdates = 0;
+            runTicks = 0;
+        }
+    }
+
+    private int drain(LinkedHashMap<PendingChunk, Boolean> queue, int budget, long deadline) {
+        int applied = 0;
+        Iterator<Map.Entry<PendingChunk, Boolean>> iterator = queue.entrySet().iterator();
+        while (applied < budget && iterator.hasNext() && System.nanoTime() < deadline) {
+            Map.Entry<PendingChunk, Boolean> entry = iterator.next();
+            iterator.remove();
+            World world = Bukkit.getWorld(entry.getKey().worldId());
+            if (world == null) {
+                continue;
+            }
+            long key = entry.getKey().key();
+            if (entry.getValue() && asyncChunkLoader != null
+                && !world.isChunkLoaded(ChunkCoverage.keyX(key), ChunkCoverage.keyZ(key))) {
+                loadAsync(world, entry.getKey());
+            } else {
+                apply(world, key, entry.getValue());
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Loads queued chunks without forcing them; the chunk load event lets the storage
+     * read them. Chunks already loaded meanwhile have been read and cost nothing.
+     */
+    private int drainFetches(int budget, long deadline) {
+        int fetched = 0;
+        Iterator<PendingChunk> iterator = fetches.iterator();
+        while (fetched < budget && iterator.hasNext() && System.nanoTime() < deadline) {
+            PendingChunk chunk = iterator.next();
+            iterator.remove();
+            World world = Bukkit.getWorld(chunk.worldId());
+            int chunkX = ChunkCoverage.keyX(chunk.key());
+            int chunkZ = ChunkCoverage.keyZ(chunk.key());
+            if (world == null || world.isChunkLoaded(chunkX, chunkZ)) {
+                continue;
+            }
+            if (asyncChunkLoader != null) {
+                try {
+                    asyncChunkLoader.invoke(world, chunkX, chunkZ);
+                } catch (IllegalAccessException | InvocationTargetException exception) {
+                    world.loadChunk(chunkX, chunkZ, false);
+                }
+            } else {
+                world.loadChunk(chunkX, chunkZ, false);
+            }
+            fetched++;
+        }
+        return fetched;
+    }
+
+    private void apply(World world, long key, boolean force) {
+        int chunkX = ChunkCoverage.keyX(key);
+        int chunkZ = ChunkCoverage.keyZ(key);
+        if (!plugin.isUsingChunkTickets()) {
+            world.setChunkForceLoaded(chunkX, chunkZ, force);
+        } else if (force) {
+            world.addPluginChunkTicket(chunkX, chunkZ, plugin);
+        } else {
+            world.removePluginChunkTicket(chunkX, chunkZ, plugin);
+        }
+    }
+
+    /**
+     * Loads the chunk in the background and forces it once loaded, unless another
+     * change to the chunk came in meanwhile.
+     */
+    private void loadAsync(World world, PendingChunk chunk) {
+        CompletableFuture<?> future;
+        try {
+            future = (CompletableFuture<?>) asyncChunkLoader.invoke(world, ChunkCoverage.keyX(chunk.key()), ChunkCoverage.keyZ(chunk.key()));
+        } catch (IllegalAccessException | InvocationTargetException exception) {
+            apply(world, chunk.key(), true);
+            return;
+        }
+        loading.put(chunk, Boolean.TRUE);
+        future.whenComplete((loaded, error) -> {
+            Runnable force = () -> {
+                if (loading.remove(chunk) == null) {
+                    return;
+                }
+                World current = Bukkit.getWorld(chunk.worldId());
+                if (current != null) {
+                    apply(current, chunk.key(), true);
+                }
+            };
+            if (Bukkit.isPrimaryThread()) {
+                force.run();
+            } else if (plugin.isEnabled()) {
+                Bukkit.getScheduler().runTask(plugin, force);
+            }
+        });
+    }
+
+    private record PendingChunk(UUID worldId, long key) {
+    }
+}
@@ -0,0 +1,98 @@
+package bout2p1_ograines.chunksloader;
+
+import bout2p1_ograines.chunksloader.storage.JournalEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loader changes made during one tick that still have to reach the forced chunks,
+ * simulated players, storage and listeners. Changes that cancel out, such as a loader
+ * toggled off and on again, leave nothing to apply.
+ */
+final class LoaderChangeSet {
+    private final List<JournalEntry> entries = new ArrayList<>();
+    private final Map<ChunkLoaderLocation, List<Coverage>> coverage = new LinkedHashMap<>();
+    private final Set<ChunkLoaderLocation> emulation = new LinkedHashSet<>();
+    private final Set<UUID> worlds = new LinkedHashSet<>();
+    private final CompletableFuture<Void> applied = new CompletableFuture<>();
+    private boolean allWorlds;
+
+    void record(JournalEntry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * Notes that a loader starts or stops covering the chunks within {@code radius}
+     * of it. A change that undoes a pending one with the same radius removes both;
+     * otherwise both are kept, such as when a loader changes tier.
+     */
+    void cover(ChunkLoaderLocation location, boolean covered, int radius) {
+        List<Coverage> pending = coverage.computeIfAbsent(location, key -> new ArrayList<>(2));
+        if (!pending.remove(new Coverage(!covered, radius))) {
+            pending.add(new Coverage(covered, radius));
+        }
+        if (pending.isEmpty()) {
+            coverage.remove(location);
+        }
+        worlds.add(location.worldId());
+    }
+
+    void syncEmulation(ChunkLoaderLocation location) {
+        emulation.add(location);
+        worlds.add(location.worldId());
+    }
+
+    void touch(UUID worldId) {
+        worlds.add(worldId);
+    }
+
+    void touchAll() {
+        allWorlds = true;
+    }
+
+    /**
+     * Drops the coverage changes of a world whose coverage is being rebuilt from
+     * scratch anyway.
+     */
+    void discardCoverage(UUID worldId) {
+        coverage.keySet().removeIf(location -> location.worldId().equals(worldId));
+    }
+
+    List<JournalEntry> entries() {
+        return entries;
+    }
+
+    /**
+     * Pending coverage changes by loader. Apply every addition before any removal, so
+     * a chunk both entered and left by loaders of the batch never drops to zero.
+     */
+    Map<ChunkLoaderLocation, List<Coverage>> coverage() {
+        return coverage;
+    }
+
+    Set<ChunkLoaderLocation> emulation() {
+        return emulation;
+    }
+
+    Set<UUID> worlds() {
+        return worlds;
+    }
+
+    boolean isAllWorlds() {
+        return allWorlds;
+    }
+
+    CompletableFuture<Void> applied() {
+        return applied;
+    }
+
+    record Coverage(boolean covered, int radius) {
+    }
+}
@@ -0,0 +1,221 @@
+package bout2p1_ograines.chunksloader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Spatial hash of the loaders of one world, bucketed into square cells of chunks, so
+ * overlap checks and range queries only look at the cells around the point of
+ * interest instead of every loader in the world. Cells hold the packed block
+ * positions of their loaders.
+ */
+final class LoaderGrid {
+    private static final int CELL_SHIFT = 3;
+    private static final int MAX_RING = 32;
+
+    private static final long[] EMPTY = new long[0];
+
+    private final UUID worldId;
+    private final Map<Long, long[]> cells = new HashMap<>();
+    private int size;
+
+    LoaderGrid(UUID worldId) {
+        this.worldId = worldId;
+    }
+
+    void add(long position) {
+        long cell = cellOf(position);
+        long[] bucket = cells.getOrDefault(cell, EMPTY);
+        long[] grown = Arrays.copyOf(bucket, bucket.length + 1);
+        grown[bucket.length] = position;
+        cells.put(cell, grown);
+        size++;
+    }
+
+    void remove(long position) {
+        long cell = cellOf(position);
+        long[] bucket = cells.get(cell);
+        if (bucket == null) {
+            return;
+        }
+        for (int index = 0; index < bucket.length; index++) {
+            if (bucket[index] != position) {
+                continue;
+            }
+            size--;
+            if (bucket.length == 1) {
+                cells.remove(cell);
+            } else {
+                long[] shrunk = Arrays.copyOf(bucket, bucket.length - 1);
+                System.arraycopy(bucket, index + 1, shrunk, index, bucket.length - index - 1);
+                cells.put(cell, shrunk);
+            }
+            return;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap used by the cells, map entries and boxed keys included.
+     */
+    long getFootprintBytes() {
+        long bytes = 48L + LoaderTable.arrayBytes(Integer.highestOneBit(Math.max(1, cells.size()) * 2), 4);
+        for (long[] bucket : cells.values()) {
+            // Map node and boxed cell key, then the bucket.
+            bytes += 32L + 24L + LoaderTable.arrayBytes(bucket.length, 8);
+        }
+        return bytes;
+    }
+
+    /**
+     * Whether a loader sits within {@code distance} chunks of the chunk on both axes.
+     */
+    boolean anyWithin(int chunkX, int chunkZ, int distance) {
+        int minCellX = (chunkX - distance) >> CELL_SHIFT;
+        int maxCellX = (chunkX + distance) >> CELL_SHIFT;
+        int minCellZ = (chunkZ - distance) >> CELL_SHIFT;
+        int maxCellZ = (chunkZ + distance) >> CELL_SHIFT;
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                long[] bucket = cells.get(ChunkCoverage.key(cellX, cellZ));
+                if (bucket == null) {
+                    continue;
+                }
+                for (long position : bucket) {
+                    if (Math.abs(chunkX(position) - chunkX) <= distance && Math.abs(chunkZ(position) - chunkZ) <= distance) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the loaders within {@code distance} chunks of the chunk on both axes,
+     * closest first.
+     */
+    List<ChunkLoaderLocation> within(int chunkX, int chunkZ, int distance) {
+        List<Long> result = new ArrayList<>();
+        int minCellX = (chunkX - distance) >> CELL_SHIFT;
+        int maxCellX = (chunkX + distance) >> CELL_SHIFT;
+        int minCellZ = (chunkZ - distance) >> CELL_SHIFT;
+        int maxCellZ = (chunkZ + distance) >> CELL_SHIFT;
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                long[] bucket = cells.get(ChunkCoverage.key(cellX, cellZ));
+                if (bucket == null) {
+                    continue;
+                }
+                for (long position : bucket) {
+                    if (Math.abs(chunkX(position) - chunkX) <= distance && Math.abs(chunkZ(position) - chunkZ) <= distance) {
+                        result.add(position);
+                    }
+                }
+            }
+        }
+        int blockX = (chunkX << 4) + 8;
+        int blockZ = (chunkZ << 4) + 8;
+        result.sort(Comparator.comparingLong(position -> distanceSquared(position, blockX, blockZ)));
+        List<ChunkLoaderLocation> locations = new ArrayList<>(result.size());
+        for (long position : result) {
+            locations.add(new ChunkLoaderLocation(worldId, position));
+        }
+        return locations;
+    }
+
+    /**
+     * Returns the loader closest to the block column, searching outwards ring by ring
+     * of cells, or {@code null} if the world has none. Far away from every loader the
+     * search falls back to scanning all of them.
+     */
+    ChunkLoaderLocation nearest(int blockX, int blockZ) {
+        if (size == 0) {
+            return null;
+        }
+        int centerX = blockX >> (4 + CELL_SHIFT);
+        int centerZ = blockZ >> (4 + CELL_SHIFT);
+        long cellBlocks = 16L << CELL_SHIFT;
+        Nearest nearest = new Nearest(blockX, blockZ);
+        for (int ring = 0; ring <= MAX_RING; ring++) {
+            // Every loader beyond this ring is at least (ring - 1) whole cells away.
+            long minDistance = Math.max(0, ring - 1) * cellBlocks;
+            if (nearest.found && minDistance * minDistance > nearest.bestDistance) {
+                return nearest.best();
+            }
+            if (ring == 0) {
+                nearest.accept(cells.get(ChunkCoverage.key(centerX, centerZ)));
+                continue;
+            }
+            for (int offset = -ring; offset <= ring; offset++) {
+                nearest.accept(cells.get(ChunkCoverage.key(centerX + offset, centerZ - ring)));
+                nearest.accept(cells.get(ChunkCoverage.key(centerX + offset, centerZ + ring)));
+            }
+            for (int offset = -ring + 1; offset < ring; offset++) {
+                nearest.accept(cells.get(ChunkCoverage.key(centerX - ring, centerZ + offset)));
+                nearest.accept(cells.get(ChunkCoverage.key(centerX + ring, centerZ + offset)));
+            }
+        }
+        for (long[] bucket : cells.values()) {
+            nearest.accept(bucket);
+        }
+        return nearest.best();
+    }
+
+    private static long cellOf(long position) {
+        return ChunkCoverage.key(chunkX(position) >> CELL_SHIFT, chunkZ(position) >> CELL_SHIFT);
+    }
+
+    private static int chunkX(long position) {
+        return ChunkLoaderLocation.unpackX(position) >> 4;
+    }
+
+    private static int chunkZ(long position) {
+        return ChunkLoaderLocation.unpackZ(position) >> 4;
+    }
+
+    private static long distanceSquared(long position, int blockX, int blockZ) {
+        long dx = ChunkLoaderLocation.unpackX(position) - blockX;
+        long dz = ChunkLoaderLocation.unpackZ(position) - blockZ;
+        return dx * dx + dz * dz;
+    }
+
+    private final class Nearest {
+        private final int blockX;
+        private final int blockZ;
+        private boolean found;
+        private long best;
+        private long bestDistance = Long.MAX_VALUE;
+
+        private Nearest(int blockX, int blockZ) {
+            this.blockX = blockX;
+            this.blockZ = blockZ;
+        }
+
+        private void accept(long[] bucket) {
+            if (bucket == null) {
+                return;
+            }
+            for (long position : bucket) {
+                long distance = distanceSquared(position, blockX, blockZ);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = position;
+                    found = true;
+                }
+            }
+        }
+
+        private ChunkLoaderLocation best() {
+            return found ? new ChunkLoaderLocation(worldId, best) : null;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package bout2p1_ograines.chunksloader;
+
+import bout2p1_ograines.chunksloader.storage.LoaderEncoding;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * The loaders of one world in an open-addressing table keyed by packed block position
+ * ({@link ChunkLoaderLocation#pack(int, int, int)}), with the state of each loader in
+ * a byte of flags next to it. A loader costs a few bytes instead of a location, a
+ * state and a map entry; {@link ChunkLoaderLocation} and {@link ChunkLoaderState}
+ * objects are only created when asked for.
+ * <p>
+ * Simulated player names that match the one generated from the location are not
+ * stored at all, and other names are interned.
+ * <p>
+ * {@link #snapshot()} hands out a read-only table sharing the arrays of this one; the
+ * arrays are only copied when this table is changed next, so publishing a world that
+ * did not change costs nothing.
+ */
+final class LoaderTable {
+    static final int ACTIVE = LoaderEncoding.ACTIVE;
+    static final int PLAYER_EMULATION = LoaderEncoding.PLAYER_EMULATION;
+    static final int KEEP_LOADED = LoaderEncoding.KEEP_LOADED;
+    private static final int GENERATED_NAME = 1 << 3;
+    // Set on every used slot, so a free slot is one without flags.
+    private static final int PRESENT = 1 << 7;
+    private static final int MIN_CAPACITY = 16;
+    private static final int STATE_FLAGS = ACTIVE | PLAYER_EMULATION | KEEP_LOADED;
+    // Loaders without a simulated player name all share one of these states.
+    private static final ChunkLoaderState[] UNNAMED_STATES = new ChunkLoaderState[STATE_FLAGS + 1];
+
+    static {
+        for (int bits = 0; bits <= STATE_FLAGS; bits++) {
+            UNNAMED_STATES[bits] = new ChunkLoaderState((bits & ACTIVE) != 0, (bits & PLAYER_EMULATION) != 0, null,
+                (bits & KEEP_LOADED) != 0 ? LoaderTier.LOADED : LoaderTier.TICKING);
+        }
+    }
+
+    private final UUID worldId;
+    private long[] positions;
+    private byte[] flags;
+    private String[] names;
+    private int mask;
+    private int size;
+    private int namedCount;
+    // Whether a snapshot uses the current arrays, which must then be copied before a change.
+    private boolean shared;
+
+    LoaderTable(UUID worldId, int expectedSize) {
+        this.worldId = worldId;
+        allocate(capacityFor(expectedSize));
+    }
+
+    private LoaderTable(LoaderTable other) {
+        this.worldId = other.worldId;
+        this.positions = other.positions;
+        this.flags = other.flags;
+        this.names = other.names;
+        this.mask = other.mask;
+        this.size = other.size;
+        this.namedCount = other.namedCount;
+        this.shared = true;
+    }
+
+    /**
+     * Returns a table with the current loaders that never changes, sharing the arrays
+     * of this one until this one is changed.
+     */
+    LoaderTable snapshot() {
+        shared = true;
+        return new LoaderTable(this);
+    }
+
+    /**
+     * Whether the table changed since the last {@link #snapshot()}.
+     */
+    boolean changedSinceSnapshot() {
+        return !shared;
+    }
+
+    UUID worldId() {
+        return worldId;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the slot of the loader at the position, or {@code -1} if there is none.
+     */
+    int find(long position) {
+        int slot = slot(position);
+        while (flags[slot] != 0) {
+            if (positions[slot] == position) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    boolean contains(long position) {
+        return find(position) >= 0;
+    }
+
+    /**
+     * Adds a loader or replaces the state of the one at the position, returning
+     * {@code true} if there was none.
+     */
+    boolean put(long position, ChunkLoaderState state) {
+        unshare();
+        int slot = find(position);
+        boolean added = slot < 0;
+        if (added) {
+            if (size + 1 > threshold()) {
+                allocate(positions.length << 1);
+            }
+            slot = insert(position);
+            size++;
+        }
+        flags[slot] = (byte) (PRESENT | flagsOf(state));
+        setName(slot, state.getSimulatedPlayerName());
+        return added;
+    }
+
+    /**
+     * Removes the loader at the position and returns its last state, or {@code null}
+     * if there was none.
+     */
+    ChunkLoaderState remove(long position) {
+        int slot = find(position);
+        if (slot < 0) {
+            return null;
+        }
+        unshare();
+        ChunkLoaderState state = state(slot);
+        setName(slot, null);
+        size--;
+        // Shift the following entries of the probe sequence back so lookups never stop
+        // at the hole.
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (flags[next] != 0) {
+            int home = slot(positions[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                positions[hole] = positions[next];
+                flags[hole] = flags[next];
+                if (names != null) {
+                    names[hole] = names[next];
+                }
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        flags[hole] = 0;
+        if (names != null) {
+            names[hole] = null;
+        }
+        return state;
+    }
+
+    /**
+     * Returns the first used slot after the given one, or {@code -1}; start with
+     * {@code -1} to walk every loader.
+     */
+    int next(int slot) {
+        for (int index = slot + 1; index < flags.length; index++) {
+            if (flags[index] != 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    long position(int slot) {
+        return positions[slot];
+    }
+
+    ChunkLoaderLocation location(int slot) {
+        return new ChunkLoaderLocation(worldId, positions[slot]);
+    }
+
+    boolean is(int slot, int flag) {
+        return (flags[slot] & flag) != 0;
+    }
+
+    void set(int slot, int flag, boolean value) {
+        unshare();
+        flags[slot] = (byte) (value ? flags[slot] | flag : flags[slot] & ~flag);
+    }
+
+    String name(int slot) {
+        if (is(slot, GENERATED_NAME)) {
+            long position = positions[slot];
+            return generatedName(worldId, ChunkLoaderLocation.unpackX(position), ChunkLoaderLocation.unpackY(position),
+                ChunkLoaderLocation.unpackZ(position));
+        }
+        return names == null ? null : names[slot];
+    }
+
+    boolean hasName(int slot) {
+        return is(slot, GENERATED_NAME) || (names != null && names[slot] != null);
+    }
+
+    void setName(int slot, String name) {
+        unshare();
+        if (names != null && names[slot] != null) {
+            names[slot] = null;
+            namedCount--;
+        }
+        long position = positions[slot];
+        boolean generated = name != null && name.equals(generatedName(worldId, ChunkLoaderLocation.unpackX(position),
+            ChunkLoaderLocation.unpackY(position), ChunkLoaderLocation.unpackZ(position)));
+        set(slot, GENERATED_NAME, generated);
+        if (name == null || generated) {
+            return;
+        }
+        if (names == null) {
+            names = new String[positions.length];
+        }
+        names[slot] = name.intern();
+        namedCount++;
+    }
+
+    LoaderTier tier(int slot) {
+        return is(slot, KEEP_LOADED) ? LoaderTier.LOADED : LoaderTier.TICKING;
+    }
+
+    /**
+     * Returns the state of the loader in the slot, without allocating unless the
+     * loader has a simulated player name.
+     */
+    ChunkLoaderState state(int slot) {
+        if (!hasName(slot)) {
+            return UNNAMED_STATES[flags[slot] & STATE_FLAGS];
+        }
+        return new ChunkLoaderState(is(slot, ACTIVE), is(slot, PLAYER_EMULATION), name(slot), tier(slot));
+    }
+
+    /**
+     * Number of loaders whose simulated player name had to be stored.
+     */
+    int getStoredNameCount() {
+        return namedCount;
+    }
+
+    /**
+     * Approximate heap used by the table, array headers included and the interned
+     * names left out.
+     */
+    long getFootprintBytes() {
+        long bytes = 32L + arrayBytes(positions.length, 8) + arrayBytes(flags.length, 1);
+        if (names != null) {
+            bytes += arrayBytes(names.length, 4);
+        }
+        return bytes;
+    }
+
+    int capacity() {
+        return positions.length;
+    }
+
+    /**
+     * Name of the simulated player of a loader that has not been given another one,
+     * derived from its location.
+     */
+    static String generatedName(UUID worldId, int x, int y, int z) {
+        long hash = 1469598103934665603L;
+        hash = mixHash(hash, worldId.getMostSignificantBits());
+        hash = mixHash(hash, worldId.getLeastSignificantBits());
+        hash = mixHash(hash, x);
+        hash = mixHash(hash, y);
+        hash = mixHash(hash, z);
+        String base = Long.toUnsignedString(hash, 36).toUpperCase(Locale.ROOT);
+        String name = "CL" + base;
+        if (name.length() > 16) {
+            name = name.substring(0, 16);
+        }
+        while (name.length() < 3) {
+            name = name + "0";
+        }
+        return name;
+    }
+
+    static long arrayBytes(int length, int elementBytes) {
+        return (16L + (long) length * elementBytes + 7L) & ~7L;
+    }
+
+    private static long mixHash(long current, long value) {
+        current ^= value;
+        current *= 1099511628211L;
+        return current;
+    }
+
+    private static int flagsOf(ChunkLoaderState state) {
+        return LoaderEncoding.flags(state.isActive(), state.isPlayerEmulationEnabled(), state.getTier() == LoaderTier.LOADED);
+    }
+
+    private void unshare() {
+        if (!shared) {
+            return;
+        }
+        positions = positions.clone();
+        flags = flags.clone();
+        if (names != null) {
+            names = names.clone();
+        }
+        shared = false;
+    }
+
+    private int threshold() {
+        return (positions.length >> 2) * 3;
+    }
+
+    private int insert(long position) {
+        int slot = slot(position);
+        while (flags[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        positions[slot] = position;
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        long[] oldPositions = positions;
+        byte[] oldFlags = flags;
+        String[] oldNames = names;
+        positions = new long[capacity];
+        flags = new byte[capacity];
+        names = oldNames == null ? null : new String[capacity];
+        mask = capacity - 1;
+        if (oldPositions == null) {
+            return;
+        }
+        for (int index = 0; index < oldPositions.length; index++) {
+            if (oldFlags[index] == 0) {
+                continue;
+            }
+            int slot = insert(oldPositions[index]);
+            flags[slot] = oldFlags[index];
+            if (oldNames != null) {
+                names[slot] = oldNames[index];
+            }
+        }
+    }
+
+    private int slot(long position) {
+        long hash = position * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (1 << 30) && (capacity >> 2) * 3 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,19 @@
+package bout2p1_ograines.chunksloader;
+
+/**
+ * How much of its area a chunk loader keeps running.
+ */
+public enum LoaderTier {
+    /**
+     * Forces every chunk of the area, so entities, block entities and redstone keep
+     * ticking throughout.
+     */
+    TICKING,
+    /**
+     * Forces only the chunk holding the loader. The chunks around it stay loaded at
+     * the lower levels that spread from it: the adjacent ring still runs block ticks
+     * but no entities, and the ring after that is loaded without ticking at all. The
+     * area kept is capped at two chunks around the loader.
+     */
+    LOADED
+}
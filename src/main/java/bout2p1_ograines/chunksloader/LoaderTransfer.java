@@ -0,0 +1,363 @@
+package bout2p1_ograines.chunksloader;
+
+import bout2p1_ograines.chunksloader.storage.LoaderRecord;
+import bout2p1_ograines.chunksloader.storage.LoaderSnapshot;
+import bout2p1_ograines.chunksloader.storage.WriteBehindWriter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Streams loaders to and from newline-delimited JSON files in {@code exports/}.
+ * <p>
+ * Files are read and written on an asynchronous task one line at a time. Imported
+ * lines are handed to the main thread through a bounded queue, so memory use does
+ * not grow with the file, and are validated against the placement rules and applied
+ * in batches of {@value #IMPORT_BATCH_SIZE} per tick. Persistence is held back during
+ * an import and flushed once at the end.
+ */
+public final class LoaderTransfer {
+    public static final String DIRECTORY_NAME = "exports";
+    private static final String FILE_SUFFIX = ".ndjson";
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final int QUEUE_CAPACITY = 4 * IMPORT_BATCH_SIZE;
+    private static final ImportLine END = new ImportLine(null, null, null);
+
+    private final ChunksLoaderPlugin plugin;
+    private final ChunkLoaderManager manager;
+    private final File directory;
+    private boolean running;
+
+    public LoaderTransfer(ChunksLoaderPlugin plugin, ChunkLoaderManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.directory = new File(plugin.getDataFolder(), DIRECTORY_NAME);
+    }
+
+    public List<String> listFiles() {
+        List<String> names = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                names.add(file.getName().substring(0, file.getName().length() - FILE_SUFFIX.length()));
+            }
+        }
+        return names;
+    }
+
+    public void export(CommandSender sender, String name) {
+        File file = resolve(sender, name);
+        if (file == null || !begin(sender)) {
+            return;
+        }
+        long start = System.nanoTime();
+        LoaderSnapshot snapshot = manager.createSnapshot();
+        Map<UUID, String> worldNames = new HashMap<>();
+        for (World world : Bukkit.getWorlds()) {
+            worldNames.put(world.getUID(), world.getName());
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            String result;
+            try {
+                Files.createDirectories(directory.toPath());
+                try (BufferedWriter output = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    for (Map.Entry<UUID, List<LoaderRecord>> entry : snapshot.worlds().entrySet()) {
+                        for (LoaderRecord record : entry.getValue()) {
+                            output.write(encode(entry.getKey(), worldNames.get(entry.getKey()), record));
+                            output.newLine();
+                        }
+                    }
+                }
+                result = ChatColor.GREEN + "Exported " + snapshot.loaderCount() + " chunk loader(s) to "
+                    + DIRECTORY_NAME + "/" + file.getName() + " in " + formatMillis(System.nanoTime() - start) + ".";
+            } catch (IOException | RuntimeException exception) {
+                result = ChatColor.RED + "Export failed: " + exception.getMessage();
+            }
+            finish(sender, result);
+        });
+    }
+
+    public void importFile(CommandSender sender, String name) {
+        File file = resolve(sender, name);
+        if (file == null) {
+            return;
+        }
+        if (!file.isFile()) {
+            sender.sendMessage(ChatColor.RED + "No export named " + name + " was found in " + DIRECTORY_NAME + "/.");
+            return;
+        }
+        if (!begin(sender)) {
+            return;
+        }
+        new Import(sender, file).start();
+    }
+
+    private File resolve(CommandSender sender, String name) {
+        String base = name.endsWith(FILE_SUFFIX) ? name.substring(0, name.length() - FILE_SUFFIX.length()) : name;
+        if (!FILE_NAME.matcher(base).matches() || base.startsWith(".")) {
+            sender.sendMessage(ChatColor.RED + "File names may only contain letters, digits, '.', '_' and '-'.");
+            return null;
+        }
+        return new File(directory, base + FILE_SUFFIX);
+    }
+
+    private boolean begin(CommandSender sender) {
+        if (running) {
+            sender.sendMessage(ChatColor.RED + "Another import or export is still running.");
+            return false;
+        }
+        running = true;
+        return true;
+    }
+
+    private void finish(CommandSender sender, String message) {
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            running = false;
+            sender.sendMessage(message);
+        });
+    }
+
+    private static String encode(UUID worldId, String worldName, LoaderRecord record) throws IOException {
+        StringWriter line = new StringWriter(128);
+        try (JsonWriter writer = new JsonWriter(line)) {
+            writer.beginObject();
+            writer.name("world").value(worldId.toString());
+            if (worldName != null) {
+                writer.name("worldName").value(worldName);
+            }
+            writer.name("x").value(record.x());
+            writer.name("y").value(record.y());
+            writer.name("z").value(record.z());
+            writer.name("active").value(record.active());
+            writer.name("player").value(record.playerEmulation());
+            if (record.simulatedPlayerName() != null) {
+                writer.name("playerName").value(record.simulatedPlayerName());
+            }
+            writer.name("tier").value(record.keepLoaded() ? "loaded" : "ticking");
+            writer.endObject();
+        }
+        return line.toString();
+    }
+
+    private static ImportLine decode(String line) throws IOException {
+        UUID worldId = null;
+        String worldName = null;
+        Integer x = null;
+        Integer y = null;
+        Integer z = null;
+        boolean active = true;
+        boolean player = false;
+        String playerName = null;
+        boolean keepLoaded = false;
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "world" -> worldId = UUID.fromString(reader.nextString());
+                    case "worldName" -> worldName = reader.nextString();
+                    case "x" -> x = reader.nextInt();
+                    case "y" -> y = reader.nextInt();
+                    case "z" -> z = reader.nextInt();
+                    case "active" -> active = reader.nextBoolean();
+                    case "player" -> player = reader.nextBoolean();
+                    case "playerName" -> playerName = reader.nextString();
+                    case "tier" -> keepLoaded = reader.nextString().equalsIgnoreCase("loaded");
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("unexpected data after the record");
+            }
+        } catch (IllegalArgumentException | IllegalStateException exception) {
+            throw new IOException(exception.getMessage(), exception);
+        }
+        if (x == null || y == null || z == null) {
+            throw new IOException("missing x, y or z");
+        }
+        if (worldId == null && worldName == null) {
+            throw new IOException("missing world");
+        }
+        return new ImportLine(worldId, worldName, new LoaderRecord(x, y, z, active, player, playerName, keepLoaded));
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0d);
+    }
+
+    private record ImportLine(UUID worldId, String worldName, LoaderRecord record) {
+    }
+
+    private final class Import {
+        private final CommandSender sender;
+        private final File file;
+        private final BlockingQueue<ImportLine> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicInteger malformed = new AtomicInteger();
+        private final Set<World> touched = new HashSet<>();
+        private final long start = System.nanoTime();
+        private volatile boolean cancelled;
+        private volatile String readError;
+        private BukkitTask task;
+        private int imported;
+        private int unknownWorld;
+        private int outOfBounds;
+        private int blocked;
+        private int duplicates;
+
+        private Import(CommandSender sender, File file) {
+            this.sender = sender;
+            this.file = file;
+        }
+
+        private void start() {
+            manager.getWriter().pause();
+            sender.sendMessage(ChatColor.YELLOW + "Importing chunk loaders from " + DIRECTORY_NAME + "/" + file.getName() + "...");
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, this::read);
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+        }
+
+        private void read() {
+            try (BufferedReader input = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                int number = 0;
+                while ((line = input.readLine()) != null && !cancelled) {
+                    number++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        offer(decode(line));
+                    } catch (IOException exception) {
+                        if (malformed.incrementAndGet() <= 5) {
+                            plugin.getLogger().warning("Skipping line " + number + " of " + file.getName() + ": " + exception.getMessage());
+                        }
+                    }
+                }
+            } catch (IOException exception) {
+                readError = exception.getMessage();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                offer(END);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void offer(ImportLine line) throws InterruptedException {
+            while (!cancelled && !queue.offer(line, 1L, TimeUnit.SECONDS)) {
+                if (!plugin.isEnabled()) {
+                    cancelled = true;
+                }
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < IMPORT_BATCH_SIZE; i++) {
+                ImportLine line = queue.poll();
+                if (line == null) {
+                    return;
+                }
+                if (line == END) {
+                    complete();
+                    return;
+                }
+                apply(line);
+            }
+        }
+
+        private void apply(ImportLine line) {
+            World world = line.worldId() == null ? null : Bukkit.getWorld(line.worldId());
+            if (world == null && line.worldName() != null) {
+                world = Bukkit.getWorld(line.worldName());
+            }
+            if (world == null) {
+                unknownWorld++;
+                return;
+            }
+            LoaderRecord record = line.record();
+            if (record.y() < world.getMinHeight() || record.y() >= world.getMaxHeight()) {
+                outOfBounds++;
+                return;
+            }
+            // The grid checked here already holds the loaders imported so far.
+            int radius = manager.coverageRadius(record.keepLoaded() ? LoaderTier.LOADED : LoaderTier.TICKING);
+            if (!manager.canPlaceLoader(new Location(world, record.x(), record.y(), record.z()), radius)) {
+                if (manager.hasLoader(new ChunkLoaderLocation(world.getUID(), record.x(), record.y(), record.z()))) {
+                    duplicates++;
+                } else {
+                    blocked++;
+                }
+                return;
+            }
+            if (!manager.importLoader(world, record)) {
+                duplicates++;
+                return;
+            }
+            touched.add(world);
+            imported++;
+        }
+
+        private void complete() {
+            task.cancel();
+            WriteBehindWriter writer = manager.getWriter();
+            writer.resume();
+            if (imported > 0) {
+                writer.requestCompaction();
+            }
+            for (World world : touched) {
+                manager.refreshWorld(world);
+            }
+            running = false;
+            sender.sendMessage(ChatColor.GREEN + "Imported " + imported + " chunk loader(s) in " + formatMillis(System.nanoTime() - start) + ".");
+            int rejected = unknownWorld + outOfBounds + blocked + duplicates + malformed.get();
+            if (rejected > 0) {
+                sender.sendMessage(ChatColor.GOLD + "Skipped " + rejected + ": " + malformed.get() + " malformed, "
+                    + unknownWorld + " unknown world, " + outOfBounds + " out of bounds, "
+                    + blocked + " overlapping a loader or spawn, " + duplicates + " already present.");
+            }
+            if (readError != null) {
+                sender.sendMessage(ChatColor.RED + "Reading stopped early: " + readError);
+            }
+        }
+    }
+}
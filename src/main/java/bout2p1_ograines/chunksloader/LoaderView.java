@@ -0,0 +1,62 @@
+package bout2p1_ograines.chunksloader;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only view of the loaders of one world as they were when the manager last
+ * applied a batch of changes. Views are never modified after they are published, so
+ * they can be read from any thread without locking; a newer view replaces them with
+ * a higher {@link #getVersion() version}.
+ */
+public final class LoaderView {
+    private final LoaderTable loaders;
+    private final String worldName;
+    private final long version;
+
+    LoaderView(LoaderTable loaders, String worldName, long version) {
+        this.loaders = loaders;
+        this.worldName = worldName;
+        this.version = version;
+    }
+
+    public UUID getWorldId() {
+        return loaders.worldId();
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * Increases every time the manager publishes a new view of any world.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return loaders.size();
+    }
+
+    public boolean contains(ChunkLoaderLocation location) {
+        return location.worldId().equals(loaders.worldId()) && loaders.contains(location.position());
+    }
+
+    /**
+     * Returns the state of the loader, or {@code null} if there was none.
+     */
+    public ChunkLoaderState get(ChunkLoaderLocation location) {
+        if (!location.worldId().equals(loaders.worldId())) {
+            return null;
+        }
+        int slot = loaders.find(location.position());
+        return slot < 0 ? null : loaders.state(slot);
+    }
+
+    public void forEach(BiConsumer<ChunkLoaderLocation, ChunkLoaderState> action) {
+        for (int slot = loaders.next(-1); slot >= 0; slot = loaders.next(slot)) {
+            action.accept(loaders.location(slot), loaders.state(slot));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package bout2p1_ograines.chunksloader;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Brings loaders online in waves after the server starts.
+ * <p>
+ * The manager queues the chunks of every loader for warm-up in priority order, and
+ * the {@link ForcedChunkQueue} forces them at the configured rate. This class follows
+ * along: once all chunks of a loader have been forced it hands the loader back to the
+ * manager, which spawns its simulated player. At most one simulated player is spawned
+ * per tick.
+ */
+public final class LoaderWarmUp {
+    private static final long PROGRESS_LOG_TICKS = 200L;
+
+    private final ChunksLoaderPlugin plugin;
+    private final ForcedChunkQueue chunkQueue;
+    private final Predicate<ChunkLoaderLocation> onReady;
+    private final ArrayDeque<Entry> order = new ArrayDeque<>();
+    private final Set<ChunkLoaderLocation> waiting = new HashSet<>();
+    private BukkitTask task;
+    private long ticks;
+    private long start;
+    private long elapsedNanos = -1L;
+    private int totalLoaders;
+    private int totalChunks;
+
+    LoaderWarmUp(ChunksLoaderPlugin plugin, ForcedChunkQueue chunkQueue, Predicate<ChunkLoaderLocation> onReady) {
+        this.plugin = plugin;
+        this.chunkQueue = chunkQueue;
+        this.onReady = onReady;
+    }
+
+    /**
+     * Starts following the given loaders, in the order their chunks were queued.
+     */
+    void begin(List<Entry> entries, int chunks) {
+        stop();
+        order.addAll(entries);
+        for (Entry entry : entries) {
+            waiting.add(entry.location());
+        }
+        totalLoaders = entries.size();
+        totalChunks = chunks;
+        ticks = 0L;
+        start = System.nanoTime();
+        elapsedNanos = -1L;
+        plugin.getLogger().info("Warming up " + totalLoaders + " chunk loader(s) with " + totalChunks + " chunk(s) to force at "
+            + plugin.getWarmUpChunksPerSecond() + " chunk(s) per second.");
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        order.clear();
+        waiting.clear();
+    }
+
+    boolean contains(ChunkLoaderLocation location) {
+        return waiting.contains(location);
+    }
+
+    /**
+     * Stops waiting for a loader that was disabled or removed during warm-up.
+     */
+    void cancel(ChunkLoaderLocation location) {
+        waiting.remove(location);
+    }
+
+    void discard(UUID worldId) {
+        waiting.removeIf(location -> location.worldId().equals(worldId));
+    }
+
+    public boolean isRunning() {
+        return task != null;
+    }
+
+    public int getRemainingLoaders() {
+        return waiting.size();
+    }
+
+    public int getTotalLoaders() {
+        return totalLoaders;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * Time the last warm-up took, or has taken so far while it is running, or
+     * {@code -1} if none ran.
+     */
+    public long getElapsedNanos() {
+        if (isRunning()) {
+            return System.nanoTime() - start;
+        }
+        return elapsedNanos;
+    }
+
+    private void tick() {
+        ticks++;
+        while (!order.isEmpty()) {
+            Entry head = order.peek();
+            if (!waiting.contains(head.location())) {
+                order.poll();
+                continue;
+            }
+            if (head.hasChunks() && chunkQueue.isWarmingUp(head.location().worldId(), head.lastKey())) {
+                break;
+            }
+            order.poll();
+            waiting.remove(head.location());
+            if (onReady.test(head.location())) {
+                break;
+            }
+        }
+        if (order.isEmpty() && chunkQueue.getWarmUpCount() == 0) {
+            elapsedNanos = System.nanoTime() - start;
+            task.cancel();
+            task = null;
+            plugin.getLogger().info(String.format(Locale.ROOT, "Warm-up finished: %d chunk loader(s) and %d chunk(s) in %.1fs.",
+                totalLoaders, totalChunks, elapsedNanos / 1_000_000_000.0d));
+            return;
+        }
+        if (ticks % PROGRESS_LOG_TICKS == 0L) {
+            plugin.getLogger().info("Warm-up: " + (totalLoaders - waiting.size()) + "/" + totalLoaders + " chunk loader(s) online, "
+                + chunkQueue.getWarmUpCount() + " chunk(s) left.");
+        }
+    }
+
+    /**
+     * A loader taking part in warm-up and the last of its chunks queued for it, if any.
+     */
+    record Entry(ChunkLoaderLocation location, boolean hasChunks, long lastKey) {
+    }
+}
@@ -101,7 +101,6 @@ public class PlayerEmulationController {
         String name = state.getSimulatedPlayerName();
         if (name == null || name.isBlank()) {
             name = generateDefaultName(location);
-            state.setSimulatedPlayerName(name);
         }
         removeExistingByName(name);
         SimulatedPlayer player = bridge.spawn(spawnLocation, name);
@@ -0,0 +1,123 @@
+package bout2p1_ograines.chunksloader;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Generates the missing chunks of newly activated loaders a few at a time.
+ * <p>
+ * A loader placed at the edge of explored terrain would otherwise generate its whole
+ * area in a single tick when its chunks are forced. Instead it waits here, without
+ * forcing anything, until every chunk of its area exists; the manager is then told
+ * to activate it. Loaders are served in the order they were added.
+ */
+public final class PregenerationQueue {
+    private final ChunksLoaderPlugin plugin;
+    private final Consumer<ChunkLoaderLocation> onGenerated;
+    private final LinkedHashMap<ChunkLoaderLocation, ArrayDeque<Long>> pending = new LinkedHashMap<>();
+    private BukkitTask task;
+    private long generatedTotal;
+
+    PregenerationQueue(ChunksLoaderPlugin plugin, Consumer<ChunkLoaderLocation> onGenerated) {
+        this.plugin = plugin;
+        this.onGenerated = onGenerated;
+    }
+
+    void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+        }
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        pending.clear();
+    }
+
+    void add(ChunkLoaderLocation location, ArrayDeque<Long> missing) {
+        pending.put(location, missing);
+    }
+
+    /**
+     * Stops generating for a loader and returns {@code true} if it was waiting.
+     */
+    boolean cancel(ChunkLoaderLocation location) {
+        return pending.remove(location) != null;
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    boolean contains(ChunkLoaderLocation location) {
+        return pending.containsKey(location);
+    }
+
+    void discard(UUID worldId) {
+        pending.keySet().removeIf(location -> location.worldId().equals(worldId));
+    }
+
+    /**
+     * Returns the waiting loaders in queue order with the number of chunks each still
+     * has to check or generate.
+     */
+    public Map<ChunkLoaderLocation, Integer> getPending() {
+        Map<ChunkLoaderLocation, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<ChunkLoaderLocation, ArrayDeque<Long>> entry : pending.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().size());
+        }
+        return result;
+    }
+
+    public int getPendingChunks() {
+        int count = 0;
+        for (ArrayDeque<Long> missing : pending.values()) {
+            count += missing.size();
+        }
+        return count;
+    }
+
+    public long getGeneratedTotal() {
+        return generatedTotal;
+    }
+
+    private void drain() {
+        int budget = plugin.getGenerationChunksPerTick();
+        Iterator<Map.Entry<ChunkLoaderLocation, ArrayDeque<Long>>> iterator = pending.entrySet().iterator();
+        while (budget > 0 && iterator.hasNext()) {
+            Map.Entry<ChunkLoaderLocation, ArrayDeque<Long>> entry = iterator.next();
+            World world = Bukkit.getWorld(entry.getKey().worldId());
+            if (world == null) {
+                iterator.remove();
+                continue;
+            }
+            ArrayDeque<Long> missing = entry.getValue();
+            while (budget > 0 && !missing.isEmpty()) {
+                long key = missing.poll();
+                int chunkX = ChunkCoverage.keyX(key);
+                int chunkZ = ChunkCoverage.keyZ(key);
+                // Another loader may have generated it meanwhile.
+                if (!world.isChunkGenerated(chunkX, chunkZ)) {
+                    world.loadChunk(chunkX, chunkZ, true);
+                    generatedTotal++;
+                    budget--;
+                }
+            }
+            if (missing.isEmpty()) {
+                iterator.remove();
+                onGenerated.accept(entry.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package bout2p1_ograines.chunksloader;
+
+import org.bukkit.GameRule;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * The chunks a world keeps loaded around its spawn, as a square of {@code radius}
+ * chunks around the spawn chunk. Built from the spawn location and game rules alone,
+ * so it never loads a chunk, and every check on it is plain arithmetic.
+ */
+record SpawnArea(int chunkX, int chunkZ, int radius) {
+    /**
+     * Radius kept loaded by servers older than the {@code spawnChunkRadius} game rule.
+     * Before 1.20.5 the spawn chunk ticket had a fixed size; the game rule replaced it
+     * with a default of 2, and setting it to 10 restores the old area.
+     */
+    private static final int LEGACY_RADIUS = 10;
+    private static final String RADIUS_RULE = "spawnChunkRadius";
+
+    static SpawnArea of(World world) {
+        Location spawn = world.getSpawnLocation();
+        return new SpawnArea(spawn.getBlockX() >> 4, spawn.getBlockZ() >> 4, spawnChunkRadius(world));
+    }
+
+    /**
+     * Returns the spawn chunk radius of the world, or {@code -1} if it keeps no spawn
+     * chunks loaded.
+     */
+    static int spawnChunkRadius(World world) {
+        GameRule<?> rule = GameRule.getByName(RADIUS_RULE);
+        if (rule != null && world.getGameRuleValue(rule) instanceof Integer radius) {
+            return radius > 0 ? radius : -1;
+        }
+        @SuppressWarnings("deprecation")
+        boolean keepSpawnLoaded = world.getKeepSpawnInMemory();
+        return keepSpawnLoaded ? LEGACY_RADIUS : -1;
+    }
+
+    boolean contains(int chunkX, int chunkZ) {
+        return overlaps(chunkX, chunkZ, 0);
+    }
+
+    /**
+     * Whether the square of {@code radius} chunks around the chunk reaches into the
+     * spawn area.
+     */
+    boolean overlaps(int chunkX, int chunkZ, int radius) {
+        if (this.radius < 0) {
+            return false;
+        }
+        int reach = this.radius + radius;
+        return Math.abs(this.chunkX - chunkX) <= reach && Math.abs(this.chunkZ - chunkZ) <= reach;
+    }
+}
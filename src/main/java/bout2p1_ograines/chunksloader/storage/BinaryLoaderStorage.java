@@ -0,0 +1,319 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Stores chunk loaders in a compact, versioned binary file per world.
+ * <p>
+ * Layout of {@code loaders/<world-uuid>.bin} (big endian):
+ * <pre>
+ * int     magic ('CLDR')
+ * short   format version
+ * long    world UUID (most significant bits)
+ * long    world UUID (least significant bits)
+ * int     string table size, followed by that many length-prefixed UTF-8 names
+ * int     record count, followed by that many fixed-width records:
+ *           long  packed block position (x: 26 bits, z: 26 bits, y: 12 bits), see {@link LoaderEncoding#pack}
+ *           byte  state flags, see {@link LoaderEncoding}
+ *           int   simulated player name index, or -1
+ * int     CRC32 of every preceding byte
+ * </pre>
+ * Mutations between snapshots are appended to a {@link MutationJournal}, which is
+ * folded back into the files of the loaded worlds once it passes the compaction
+ * threshold. Worlds are written in full when they unload, so a journal left behind
+ * by a crash only needs to be folded into the worlds it mentions on the next start.
+ * The legacy {@code chunkloaders.yml} file is migrated automatically the first time
+ * the binary directory is missing.
+ */
+public final class BinaryLoaderStorage implements StorageBackend {
+    public static final String DIRECTORY_NAME = "loaders";
+
+    private static final String FILE_SUFFIX = ".bin";
+    private static final int MAGIC = 0x434C4452;
+    private static final short VERSION = 1;
+    private static final int RECORD_SIZE = Long.BYTES + Byte.BYTES + Integer.BYTES;
+
+    private final Logger logger;
+    private final File directory;
+    private final YamlLoaderStorage legacyStorage;
+    private final MutationJournal journal;
+    private final long compactionThreshold;
+
+    public BinaryLoaderStorage(Logger logger, File dataFolder, long compactionThreshold) {
+        this.logger = logger;
+        this.directory = new File(dataFolder, DIRECTORY_NAME);
+        this.legacyStorage = new YamlLoaderStorage(logger, dataFolder);
+        this.journal = new MutationJournal(logger, dataFolder);
+        this.compactionThreshold = Math.max(1L, compactionThreshold);
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (!directory.isDirectory()) {
+            migrateLegacy();
+            return;
+        }
+        recoverJournal();
+    }
+
+    @Override
+    public List<LoaderRecord> loadWorld(UUID worldId) {
+        Path path = worldFile(worldId);
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        try {
+            return readWorld(path, worldId);
+        } catch (IOException exception) {
+            logger.severe("Unable to read chunk loaders from " + DIRECTORY_NAME + "/" + path.getFileName() + ": " + exception.getMessage());
+            return List.of();
+        }
+    }
+
+    @Override
+    public void persist(List<JournalEntry> batch) throws IOException {
+        journal.append(batch);
+    }
+
+    @Override
+    public void saveWorld(UUID worldId, List<LoaderRecord> records) throws IOException {
+        writeWorld(worldId, records);
+    }
+
+    @Override
+    public boolean shouldCompact(boolean shutdown) {
+        return shutdown ? journal.size() > 0 : journal.size() >= compactionThreshold;
+    }
+
+    @Override
+    public void compact(LoaderSnapshot snapshot) throws IOException {
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : snapshot.worlds().entrySet()) {
+            writeWorld(entry.getKey(), entry.getValue());
+        }
+        journal.reset();
+    }
+
+    @Override
+    public long getBacklogBytes() {
+        return journal.size();
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    /**
+     * Reads the loaders of every world, including worlds that are not loaded.
+     */
+    public LoaderSnapshot loadAll() {
+        Map<UUID, List<LoaderRecord>> worlds = new HashMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return LoaderSnapshot.empty();
+        }
+        for (File file : files) {
+            String name = file.getName();
+            UUID worldId;
+            try {
+                worldId = UUID.fromString(name.substring(0, name.length() - FILE_SUFFIX.length()));
+            } catch (IllegalArgumentException exception) {
+                logger.warning("Ignoring unexpected file '" + name + "' in " + DIRECTORY_NAME);
+                continue;
+            }
+            List<LoaderRecord> records = loadWorld(worldId);
+            if (!records.isEmpty()) {
+                worlds.put(worldId, records);
+            }
+        }
+        return new LoaderSnapshot(worlds);
+    }
+
+    /**
+     * Renames the file of a world whose loaders were moved to another storage, so they
+     * are not read from it again. Does nothing if the world has no file.
+     */
+    public void retireWorld(UUID worldId) throws IOException {
+        Path path = worldFile(worldId);
+        if (Files.exists(path)) {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Folds the journal left behind by an unclean shutdown into the files of the
+     * worlds it touches, so worlds can later be loaded from their file alone.
+     */
+    private void recoverJournal() throws IOException {
+        Map<UUID, List<JournalEntry>> entries = journal.read();
+        if (entries.isEmpty()) {
+            return;
+        }
+        int applied = 0;
+        for (Map.Entry<UUID, List<JournalEntry>> entry : entries.entrySet()) {
+            writeWorld(entry.getKey(), MutationJournal.apply(loadWorld(entry.getKey()), entry.getValue()));
+            applied += entry.getValue().size();
+        }
+        journal.reset();
+        logger.info("Recovered " + applied + " journal entr" + (applied == 1 ? "y" : "ies") + " for " + entries.size() + " world(s).");
+    }
+
+    private void writeWorld(UUID worldId, List<LoaderRecord> records) throws IOException {
+        Path path = worldFile(worldId);
+        if (records.isEmpty()) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        AtomicFiles.write(path, encode(worldId, records));
+    }
+
+    private Path worldFile(UUID worldId) {
+        return directory.toPath().resolve(worldId + FILE_SUFFIX);
+    }
+
+    private void migrateLegacy() throws IOException {
+        File legacyFile = legacyStorage.getFile();
+        Files.createDirectories(directory.toPath());
+        if (!legacyFile.exists()) {
+            return;
+        }
+        long readStart = System.nanoTime();
+        LoaderSnapshot snapshot = legacyStorage.loadAll();
+        long readNanos = System.nanoTime() - readStart;
+        long writeStart = System.nanoTime();
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : snapshot.worlds().entrySet()) {
+            writeWorld(entry.getKey(), entry.getValue());
+        }
+        long writeNanos = System.nanoTime() - writeStart;
+        File migrated = new File(legacyFile.getParentFile(), YamlLoaderStorage.FILE_NAME + ".migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Unable to rename " + YamlLoaderStorage.FILE_NAME + " after migration; it will be ignored from now on.");
+        }
+        logger.info(String.format(Locale.ROOT,
+            "Migrated %d chunk loader(s) from %s (read in %.2fms) to binary storage (written in %.2fms).",
+            snapshot.loaderCount(), YamlLoaderStorage.FILE_NAME, readNanos / 1_000_000.0d, writeNanos / 1_000_000.0d));
+    }
+
+    private List<LoaderRecord> readWorld(Path path, UUID expectedWorld) throws IOException {
+        byte[] content = Files.readAllBytes(path);
+        if (content.length < Integer.BYTES) {
+            throw new IOException("file is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Integer.BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (buffer.getInt(content.length - Integer.BYTES) != (int) crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+        buffer.limit(content.length - Integer.BYTES);
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("not a chunk loader file");
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported format version " + version);
+            }
+            UUID worldId = new UUID(buffer.getLong(), buffer.getLong());
+            if (!worldId.equals(expectedWorld)) {
+                throw new IOException("file belongs to world " + worldId);
+            }
+
+            int nameCount = buffer.getInt();
+            String[] names = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                names[i] = new String(content, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+
+            int recordCount = buffer.getInt();
+            if (recordCount < 0 || (long) recordCount * RECORD_SIZE != buffer.remaining()) {
+                throw new IOException("record table size does not match record count");
+            }
+            List<LoaderRecord> records = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                long packed = buffer.getLong();
+                int flags = buffer.get();
+                int nameIndex = buffer.getInt();
+                String name = nameIndex >= 0 && nameIndex < nameCount ? names[nameIndex] : null;
+                records.add(new LoaderRecord(
+                    LoaderEncoding.unpackX(packed),
+                    LoaderEncoding.unpackY(packed),
+                    LoaderEncoding.unpackZ(packed),
+                    (flags & LoaderEncoding.ACTIVE) != 0,
+                    (flags & LoaderEncoding.PLAYER_EMULATION) != 0,
+                    name,
+                    (flags & LoaderEncoding.KEEP_LOADED) != 0
+                ));
+            }
+            return records;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException exception) {
+            throw new IOException("file is truncated", exception);
+        }
+    }
+
+    private byte[] encode(UUID worldId, List<LoaderRecord> records) throws IOException {
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (LoaderRecord record : records) {
+            String name = record.simulatedPlayerName();
+            if (name != null && !nameIndexes.containsKey(name)) {
+                nameIndexes.put(name, names.size());
+                names.add(name);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + records.size() * RECORD_SIZE);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeLong(worldId.getMostSignificantBits());
+        output.writeLong(worldId.getLeastSignificantBits());
+        output.writeInt(names.size());
+        for (String name : names) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            output.writeShort(encoded.length);
+            output.write(encoded);
+        }
+        output.writeInt(records.size());
+        for (LoaderRecord record : records) {
+            int flags = LoaderEncoding.flags(record.active(), record.playerEmulation(), record.keepLoaded());
+            String name = record.simulatedPlayerName();
+            output.writeLong(LoaderEncoding.pack(record.x(), record.y(), record.z()));
+            output.writeByte(flags);
+            output.writeInt(name == null ? -1 : nameIndexes.get(name));
+        }
+        output.flush();
+
+        CRC32 crc = new CRC32();
+        byte[] body = bytes.toByteArray();
+        crc.update(body, 0, body.length);
+        output.writeInt((int) crc.getValue());
+        output.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,487 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Stores each loader in the persistent data container of the chunk that holds it,
+ * so loaders are saved by the world's own chunk I/O and travel with the world when
+ * it is copied, restored from a backup or trimmed.
+ * <p>
+ * This storage never loads a chunk itself. A small index of the chunks that contain
+ * loaders, {@code loaders/chunk-index.bin} in the {@link ChunkKeyFile} layout, tells
+ * which chunks to read; their loaders are read through {@link #readChunk(Chunk)}
+ * once each chunk is loaded, see {@link #getUnreadChunks(UUID)}. The index is
+ * rewritten whenever loaders are added or removed.
+ * <p>
+ * Mutations are written into the chunk on the main thread as soon as they are
+ * recorded if the chunk is loaded. Otherwise they are kept until it loads and
+ * logged to {@code loaders/chunk-pending.log} meanwhile, so they survive a restart.
+ * As long as the log holds mutations of a chunk, the later ones are logged too, even
+ * when written straight into the chunk, so replaying it cannot undo them.
+ * A world missing from the index is migrated from the binary storage the first
+ * time it loads, with its loaders written into their chunks the same way; its binary
+ * file is renamed once the index lists the world. An index that cannot be read is
+ * rebuilt from the loaders found in chunks as they load, see
+ * {@link #isRebuildingIndex()}.
+ */
+public final class ChunkDataLoaderStorage implements StorageBackend {
+    public static final String INDEX_FILE_NAME = "chunk-index.bin";
+    public static final String PENDING_FILE_NAME = "chunk-pending.log";
+
+    private static final int MAGIC = 0x434C4349;
+
+    private final Logger logger;
+    private final NamespacedKey dataKey;
+    private final Path indexPath;
+    private final BinaryLoaderStorage legacyStorage;
+    private final MutationJournal pending;
+    // Only changed on the writer thread; read from any.
+    private final Map<UUID, long[]> index = new ConcurrentHashMap<>();
+    // Worlds moved out of the binary storage that the index does not list yet.
+    private final Set<UUID> migrated = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Set<Long>> unread = new ConcurrentHashMap<>();
+    // Mutations of chunks that were not loaded, by world and chunk; guarded by itself.
+    private final Map<UUID, Map<Long, List<JournalEntry>>> deferred = new HashMap<>();
+    // Chunks the pending log may hold mutations of, by world; guarded by deferred.
+    private final Map<UUID, Set<Long>> logged = new HashMap<>();
+    private final Queue<JournalEntry> unlogged = new ConcurrentLinkedQueue<>();
+    private volatile boolean dirty;
+    private volatile boolean rebuildingIndex;
+
+    public ChunkDataLoaderStorage(Plugin plugin) {
+        this.logger = plugin.getLogger();
+        this.dataKey = new NamespacedKey(plugin, "loaders");
+        File directory = new File(plugin.getDataFolder(), BinaryLoaderStorage.DIRECTORY_NAME);
+        this.indexPath = new File(directory, INDEX_FILE_NAME).toPath();
+        this.legacyStorage = new BinaryLoaderStorage(logger, plugin.getDataFolder(), Long.MAX_VALUE);
+        this.pending = new MutationJournal(logger, plugin.getDataFolder(), PENDING_FILE_NAME);
+    }
+
+    @Override
+    public String getName() {
+        return "chunk";
+    }
+
+    @Override
+    public void open() throws IOException {
+        legacyStorage.open();
+        if (Files.exists(indexPath)) {
+            try {
+                index.putAll(ChunkKeyFile.read(indexPath, MAGIC));
+            } catch (IOException exception) {
+                logger.warning("Unable to read " + BinaryLoaderStorage.DIRECTORY_NAME + "/" + INDEX_FILE_NAME
+                    + ", rebuilding it from the chunk loaders found in chunks as they load: " + exception.getMessage());
+                rebuildingIndex = true;
+                dirty = true;
+            }
+        }
+        for (Map.Entry<UUID, long[]> entry : index.entrySet()) {
+            unread.put(entry.getKey(), keySet(entry.getValue()));
+            // Left behind by versions that kept the binary files of migrated worlds.
+            legacyStorage.retireWorld(entry.getKey());
+        }
+        for (List<JournalEntry> entries : pending.read().values()) {
+            for (JournalEntry entry : entries) {
+                defer(entry);
+                synchronized (deferred) {
+                    markLogged(entry.worldId(), LoaderEncoding.chunkKeyOf(entry.x(), entry.z()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the loaders of a world migrated from the binary storage, if this is the
+     * first time the world loads. The loaders of indexed chunks are not read here, as
+     * that would mean loading their chunks; they are read through
+     * {@link #readChunk(Chunk)} once those chunks load.
+     */
+    @Override
+    public List<LoaderRecord> loadWorld(UUID worldId) {
+        if (!index.containsKey(worldId) && !migrated.contains(worldId)) {
+            return migrate(worldId);
+        }
+        return List.of();
+    }
+
+    /**
+     * Writes the mutation into its chunk if that chunk is loaded, or keeps it until the
+     * chunk loads.
+     */
+    @Override
+    public void stage(JournalEntry entry) {
+        int chunkX = Math.floorDiv(entry.x(), 16);
+        int chunkZ = Math.floorDiv(entry.z(), 16);
+        long key = LoaderEncoding.chunkKey(chunkX, chunkZ);
+        World world = Bukkit.getWorld(entry.worldId());
+        if (world != null && world.isChunkLoaded(chunkX, chunkZ)) {
+            Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+            List<JournalEntry> entries;
+            synchronized (deferred) {
+                entries = new ArrayList<>(takeDeferred(entry.worldId(), key));
+                // Replaying the log would otherwise undo this mutation after a crash.
+                if (isLogged(entry.worldId(), key)) {
+                    unlogged.add(entry);
+                }
+            }
+            entries.add(entry);
+            writeChunk(chunk, MutationJournal.apply(readStored(chunk), entries));
+        } else {
+            synchronized (deferred) {
+                defer(entry);
+                markLogged(entry.worldId(), key);
+                unlogged.add(entry);
+            }
+        }
+        if (entry.operation() == JournalEntry.Operation.ADD || entry.operation() == JournalEntry.Operation.REMOVE) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Logs the mutations kept for chunks that are not loaded, and those of loaded chunks
+     * the log holds older mutations of. The others are already in their chunks, which
+     * the world saves.
+     */
+    @Override
+    public void persist(List<JournalEntry> batch) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        for (JournalEntry entry; (entry = unlogged.poll()) != null; ) {
+            entries.add(entry);
+        }
+        pending.append(entries);
+    }
+
+    @Override
+    public void saveWorld(UUID worldId, List<LoaderRecord> records) throws IOException {
+        if (migrated.contains(worldId)) {
+            // The loaders moved out of its binary file may only be waiting in memory.
+            rewritePending();
+        }
+        long[] keys = indexKeys(worldId, records);
+        index.put(worldId, keys);
+        writeIndex();
+        // The world is released from memory; every chunk has to be read again next time.
+        unread.put(worldId, keySet(keys));
+    }
+
+    @Override
+    public boolean shouldCompact(boolean shutdown) {
+        return dirty;
+    }
+
+    /**
+     * Rewrites the index and replaces the pending log with the mutations still waiting
+     * for their chunk.
+     */
+    @Override
+    public void compact(LoaderSnapshot snapshot) throws IOException {
+        dirty = false;
+        // Before the index, which may mark a world as migrated from this point on.
+        rewritePending();
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : snapshot.worlds().entrySet()) {
+            index.put(entry.getKey(), indexKeys(entry.getKey(), entry.getValue()));
+        }
+        writeIndex();
+    }
+
+    @Override
+    public void close() {
+        pending.close();
+        legacyStorage.close();
+    }
+
+    /**
+     * Whether the index could not be read when the storage opened. Loaders are then
+     * only known once their chunk has been read, so every loaded chunk should be.
+     */
+    public boolean isRebuildingIndex() {
+        return rebuildingIndex;
+    }
+
+    /**
+     * Replaces the pending log with the mutations still waiting for their chunk.
+     */
+    private void rewritePending() throws IOException {
+        List<JournalEntry> waiting = new ArrayList<>();
+        List<JournalEntry> dropped = new ArrayList<>();
+        Map<UUID, Set<Long>> previous;
+        synchronized (deferred) {
+            // Anything staged from here on is logged by the next persist, after the rewrite.
+            for (JournalEntry entry; (entry = unlogged.poll()) != null; ) {
+                dropped.add(entry);
+            }
+            previous = new HashMap<>(logged);
+            logged.clear();
+            for (Map.Entry<UUID, Map<Long, List<JournalEntry>>> world : deferred.entrySet()) {
+                for (Map.Entry<Long, List<JournalEntry>> chunk : world.getValue().entrySet()) {
+                    waiting.addAll(chunk.getValue());
+                    markLogged(world.getKey(), chunk.getKey());
+                }
+            }
+        }
+        try {
+            pending.rewrite(waiting);
+        } catch (IOException exception) {
+            // The previous log is still in place, with the chunks it holds.
+            synchronized (deferred) {
+                previous.forEach((worldId, keys) -> logged.computeIfAbsent(worldId, id -> new HashSet<>()).addAll(keys));
+                for (JournalEntry entry; (entry = unlogged.poll()) != null; ) {
+                    dropped.add(entry);
+                }
+                unlogged.addAll(dropped);
+            }
+            dirty = true;
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns the indexed chunks of a world whose loaders have not been read yet.
+     */
+    public long[] getUnreadChunks(UUID worldId) {
+        Set<Long> keys = unread.get(worldId);
+        return keys == null ? new long[0] : keys.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Whether the chunk is indexed and its loaders have not been read yet.
+     */
+    public boolean isUnread(UUID worldId, int chunkX, int chunkZ) {
+        Set<Long> keys = unread.get(worldId);
+        return keys != null && keys.contains(LoaderEncoding.chunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Reads the loaders stored in a loaded chunk, first writing the mutations kept
+     * while it was not loaded. Must be called from the main thread.
+     */
+    public List<LoaderRecord> readChunk(Chunk chunk) {
+        UUID worldId = chunk.getWorld().getUID();
+        long key = LoaderEncoding.chunkKey(chunk.getX(), chunk.getZ());
+        Set<Long> keys = unread.get(worldId);
+        if (keys != null) {
+            keys.remove(key);
+        }
+        List<LoaderRecord> records = readStored(chunk);
+        List<JournalEntry> entries = takeDeferred(worldId, key);
+        if (!entries.isEmpty()) {
+            records = MutationJournal.apply(records, entries);
+            writeChunk(chunk, records);
+            // Drop the applied mutations from the pending log.
+            dirty = true;
+        }
+        return records;
+    }
+
+    /**
+     * Writes a copy of the index, as worlds may be looked up in it meanwhile, then
+     * retires the binary files of the worlds it now lists as migrated.
+     */
+    private void writeIndex() throws IOException {
+        ChunkKeyFile.write(indexPath, MAGIC, Map.copyOf(index));
+        for (UUID worldId : migrated) {
+            if (index.containsKey(worldId)) {
+                legacyStorage.retireWorld(worldId);
+                migrated.remove(worldId);
+            }
+        }
+    }
+
+    private List<LoaderRecord> readStored(Chunk chunk) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        byte[] data = container.get(dataKey, PersistentDataType.BYTE_ARRAY);
+        if (data == null) {
+            return List.of();
+        }
+        try {
+            return decode(data);
+        } catch (IOException exception) {
+            logger.warning("Ignoring unreadable chunk loader data in chunk " + chunk.getX() + ", " + chunk.getZ()
+                + " of " + chunk.getWorld().getName() + ": " + exception.getMessage());
+            return List.of();
+        }
+    }
+
+    private void writeChunk(Chunk chunk, List<LoaderRecord> records) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if (records.isEmpty()) {
+            container.remove(dataKey);
+            return;
+        }
+        try {
+            container.set(dataKey, PersistentDataType.BYTE_ARRAY, encode(records));
+        } catch (IOException exception) {
+            logger.severe("Unable to write chunk loader data in chunk " + chunk.getX() + ", " + chunk.getZ()
+                + " of " + chunk.getWorld().getName() + ": " + exception.getMessage());
+        }
+    }
+
+    private void defer(JournalEntry entry) {
+        long key = LoaderEncoding.chunkKeyOf(entry.x(), entry.z());
+        synchronized (deferred) {
+            deferred.computeIfAbsent(entry.worldId(), id -> new HashMap<>())
+                .computeIfAbsent(key, k -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    // Callers hold the lock on deferred.
+    private void markLogged(UUID worldId, long key) {
+        logged.computeIfAbsent(worldId, id -> new HashSet<>()).add(key);
+    }
+
+    private boolean isLogged(UUID worldId, long key) {
+        Set<Long> keys = logged.get(worldId);
+        return keys != null && keys.contains(key);
+    }
+
+    private List<JournalEntry> takeDeferred(UUID worldId, long key) {
+        synchronized (deferred) {
+            Map<Long, List<JournalEntry>> chunks = deferred.get(worldId);
+            List<JournalEntry> entries = chunks == null ? null : chunks.remove(key);
+            if (chunks != null && chunks.isEmpty()) {
+                deferred.remove(worldId);
+            }
+            return entries == null ? List.of() : entries;
+        }
+    }
+
+    /**
+     * Moves a world's loaders out of the binary storage. They are known right away and
+     * written into their chunks as those load; the binary file is renamed once the
+     * index, written with the next compaction, marks the world as migrated.
+     */
+    private List<LoaderRecord> migrate(UUID worldId) {
+        List<LoaderRecord> records = legacyStorage.loadWorld(worldId);
+        for (LoaderRecord record : records) {
+            defer(JournalEntry.add(worldId, record));
+        }
+        // Indexed by the next compaction, on the writer thread.
+        migrated.add(worldId);
+        dirty = true;
+        if (!records.isEmpty()) {
+            World world = Bukkit.getWorld(worldId);
+            logger.info("Moving " + records.size() + " chunk loader(s) of world " + (world != null ? world.getName() : worldId)
+                + " into chunk data as their chunks load.");
+        }
+        return records;
+    }
+
+    /**
+     * Chunks to index for a world: those holding its known loaders plus the indexed
+     * chunks that have not been read yet, whose loaders are not known.
+     */
+    private long[] indexKeys(UUID worldId, List<LoaderRecord> records) {
+        long[] known = chunkKeys(records);
+        Set<Long> waiting = unread.get(worldId);
+        if (waiting == null || waiting.isEmpty()) {
+            return known;
+        }
+        Set<Long> keys = keySet(known);
+        keys.addAll(waiting);
+        long[] result = new long[keys.size()];
+        int i = 0;
+        for (long key : keys) {
+            result[i++] = key;
+        }
+        return result;
+    }
+
+    private static Set<Long> keySet(long[] keys) {
+        Set<Long> set = ConcurrentHashMap.newKeySet(keys.length);
+        for (long key : keys) {
+            set.add(key);
+        }
+        return set;
+    }
+
+    private static long[] chunkKeys(List<LoaderRecord> records) {
+        Set<Long> keys = new LinkedHashSet<>();
+        for (LoaderRecord record : records) {
+            keys.add(LoaderEncoding.chunkKeyOf(record.x(), record.z()));
+        }
+        long[] result = new long[keys.size()];
+        int i = 0;
+        for (long key : keys) {
+            result[i++] = key;
+        }
+        return result;
+    }
+
+    private static byte[] encode(List<LoaderRecord> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 24);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeShort(records.size());
+        for (LoaderRecord record : records) {
+            int flags = LoaderEncoding.flags(record.active(), record.playerEmulation(), record.keepLoaded());
+            output.writeInt(record.x());
+            output.writeInt(record.y());
+            output.writeInt(record.z());
+            output.writeByte(flags);
+            String name = record.simulatedPlayerName();
+            if (name == null) {
+                output.writeShort(-1);
+            } else {
+                byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+                output.writeShort(encoded.length);
+                output.write(encoded);
+            }
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<LoaderRecord> decode(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            int count = Short.toUnsignedInt(buffer.getShort());
+            List<LoaderRecord> records = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                int z = buffer.getInt();
+                int flags = buffer.get();
+                int length = buffer.getShort();
+                String name = null;
+                if (length >= 0) {
+                    byte[] encoded = new byte[length];
+                    buffer.get(encoded);
+                    name = new String(encoded, StandardCharsets.UTF_8);
+                }
+                records.add(new LoaderRecord(x, y, z, (flags & LoaderEncoding.ACTIVE) != 0,
+                    (flags & LoaderEncoding.PLAYER_EMULATION) != 0, name, (flags & LoaderEncoding.KEEP_LOADED) != 0));
+            }
+            return records;
+        } catch (BufferUnderflowException exception) {
+            throw new IOException("data is truncated", exception);
+        }
+    }
+}
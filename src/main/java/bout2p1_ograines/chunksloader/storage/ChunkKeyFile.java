@@ -0,0 +1,94 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes sets of chunk keys grouped by world.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * int     magic
+ * short   format version
+ * int     world count, followed by that many worlds:
+ *           long  world UUID (most significant bits)
+ *           long  world UUID (least significant bits)
+ *           int   chunk count, followed by that many packed chunk keys (long), see {@link LoaderEncoding#chunkKey}
+ * int     CRC32 of every preceding byte
+ * </pre>
+ */
+final class ChunkKeyFile {
+    private static final short VERSION = 1;
+
+    private ChunkKeyFile() {
+    }
+
+    static Map<UUID, long[]> read(Path path, int magic) throws IOException {
+        byte[] content = Files.readAllBytes(path);
+        if (content.length < Integer.BYTES) {
+            throw new IOException("file is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Integer.BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (buffer.getInt(content.length - Integer.BYTES) != (int) crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+        buffer.limit(content.length - Integer.BYTES);
+        Map<UUID, long[]> worlds = new HashMap<>();
+        try {
+            if (buffer.getInt() != magic || buffer.getShort() != VERSION) {
+                throw new IOException("unexpected file header");
+            }
+            int worldCount = buffer.getInt();
+            for (int i = 0; i < worldCount; i++) {
+                UUID worldId = new UUID(buffer.getLong(), buffer.getLong());
+                int count = buffer.getInt();
+                if (count < 0 || (long) count * Long.BYTES > buffer.remaining()) {
+                    throw new IOException("chunk count does not match file size");
+                }
+                long[] keys = new long[count];
+                for (int j = 0; j < count; j++) {
+                    keys[j] = buffer.getLong();
+                }
+                worlds.put(worldId, keys);
+            }
+        } catch (BufferUnderflowException exception) {
+            throw new IOException("file is truncated", exception);
+        }
+        return worlds;
+    }
+
+    static void write(Path path, int magic, Map<UUID, long[]> worlds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(magic);
+        output.writeShort(VERSION);
+        output.writeInt(worlds.size());
+        for (Map.Entry<UUID, long[]> entry : worlds.entrySet()) {
+            output.writeLong(entry.getKey().getMostSignificantBits());
+            output.writeLong(entry.getKey().getLeastSignificantBits());
+            output.writeInt(entry.getValue().length);
+            for (long key : entry.getValue()) {
+                output.writeLong(key);
+            }
+        }
+        output.flush();
+
+        CRC32 crc = new CRC32();
+        byte[] body = bytes.toByteArray();
+        crc.update(body, 0, body.length);
+        output.writeInt((int) crc.getValue());
+        output.flush();
+        AtomicFiles.write(path, bytes.toByteArray());
+    }
+}
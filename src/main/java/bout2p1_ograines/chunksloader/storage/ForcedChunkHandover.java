@@ -0,0 +1,60 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Remembers which chunks the plugin had force-loaded when it was disabled, so the
+ * next enable can tell its own tickets apart from chunks forced by anyone else and
+ * only touch the chunks whose state actually changes.
+ * <p>
+ * The chunks are stored in {@code forced-chunks.bin} using the {@link ChunkKeyFile}
+ * layout. The file is consumed by {@link #read()}: once read it is deleted, so a
+ * crash never replays a stale hand-over.
+ */
+public final class ForcedChunkHandover {
+    public static final String FILE_NAME = "forced-chunks.bin";
+
+    private static final int MAGIC = 0x434C4643;
+
+    private final Logger logger;
+    private final Path path;
+
+    public ForcedChunkHandover(Logger logger, File dataFolder) {
+        this.logger = logger;
+        this.path = new File(dataFolder, FILE_NAME).toPath();
+    }
+
+    /**
+     * Reads and deletes the hand-over file. Returns an empty map when there is none
+     * or it cannot be read.
+     */
+    public Map<UUID, long[]> read() {
+        if (!Files.exists(path)) {
+            return new HashMap<>();
+        }
+        Map<UUID, long[]> worlds;
+        try {
+            worlds = ChunkKeyFile.read(path, MAGIC);
+        } catch (IOException exception) {
+            logger.warning("Ignoring " + FILE_NAME + ": " + exception.getMessage());
+            worlds = new HashMap<>();
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException exception) {
+            logger.warning("Unable to delete " + FILE_NAME + ": " + exception.getMessage());
+        }
+        return worlds;
+    }
+
+    public void write(Map<UUID, long[]> worlds) throws IOException {
+        ChunkKeyFile.write(path, MAGIC, worlds);
+    }
+}
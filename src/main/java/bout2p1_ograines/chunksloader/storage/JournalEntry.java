@@ -0,0 +1,62 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.util.UUID;
+
+/**
+ * Single loader mutation recorded in the {@link MutationJournal}. Every operation
+ * assigns an absolute value, so replaying a journal over a snapshot that already
+ * contains its effects leaves the snapshot unchanged.
+ */
+public record JournalEntry(
+    Operation operation,
+    UUID worldId,
+    int x,
+    int y,
+    int z,
+    boolean active,
+    boolean playerEmulation,
+    String simulatedPlayerName,
+    boolean keepLoaded
+) {
+
+    public enum Operation {
+        ADD,
+        REMOVE,
+        ACTIVATE,
+        DEACTIVATE,
+        EMULATION_ON,
+        EMULATION_OFF,
+        NAME,
+        TIER_TICKING,
+        TIER_LOADED
+    }
+
+    public static JournalEntry add(UUID worldId, LoaderRecord record) {
+        return new JournalEntry(Operation.ADD, worldId, record.x(), record.y(), record.z(),
+            record.active(), record.playerEmulation(), record.simulatedPlayerName(), record.keepLoaded());
+    }
+
+    public static JournalEntry remove(UUID worldId, int x, int y, int z) {
+        return of(Operation.REMOVE, worldId, x, y, z, null);
+    }
+
+    public static JournalEntry active(UUID worldId, int x, int y, int z, boolean active) {
+        return of(active ? Operation.ACTIVATE : Operation.DEACTIVATE, worldId, x, y, z, null);
+    }
+
+    public static JournalEntry emulation(UUID worldId, int x, int y, int z, boolean enabled) {
+        return of(enabled ? Operation.EMULATION_ON : Operation.EMULATION_OFF, worldId, x, y, z, null);
+    }
+
+    public static JournalEntry name(UUID worldId, int x, int y, int z, String simulatedPlayerName) {
+        return of(Operation.NAME, worldId, x, y, z, simulatedPlayerName);
+    }
+
+    public static JournalEntry tier(UUID worldId, int x, int y, int z, boolean keepLoaded) {
+        return of(keepLoaded ? Operation.TIER_LOADED : Operation.TIER_TICKING, worldId, x, y, z, null);
+    }
+
+    private static JournalEntry of(Operation operation, UUID worldId, int x, int y, int z, String name) {
+        return new JournalEntry(operation, worldId, x, y, z, false, false, name, false);
+    }
+}
@@ -0,0 +1,68 @@
+package bout2p1_ograines.chunksloader.storage;
+
+/**
+ * Bit layouts shared by the in-memory loader tables and every stored format: packed
+ * block positions, packed chunk keys and loader flags. They are written to disk as
+ * they are, so changing one of them changes the file formats.
+ */
+public final class LoaderEncoding {
+    public static final int ACTIVE = 1;
+    public static final int PLAYER_EMULATION = 1 << 1;
+    public static final int KEEP_LOADED = 1 << 2;
+
+    private static final int XZ_BITS = 26;
+    private static final int Y_BITS = 12;
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1L;
+    private static final long Y_MASK = (1L << Y_BITS) - 1L;
+    private static final int Z_SHIFT = Y_BITS;
+    private static final int X_SHIFT = Y_BITS + XZ_BITS;
+
+    private LoaderEncoding() {
+    }
+
+    /**
+     * Packs block coordinates the way the server does: 26 bits each for x and z, which
+     * covers the world border, and 12 bits for y.
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & XZ_MASK) << X_SHIFT) | ((z & XZ_MASK) << Z_SHIFT) | (y & Y_MASK);
+    }
+
+    public static int unpackX(long position) {
+        return (int) (position >> X_SHIFT);
+    }
+
+    public static int unpackY(long position) {
+        return (int) (position << (64 - Y_BITS) >> (64 - Y_BITS));
+    }
+
+    public static int unpackZ(long position) {
+        return (int) (position << (64 - X_SHIFT) >> (64 - XZ_BITS));
+    }
+
+    /**
+     * Packs chunk coordinates as {@code (x << 32) | z}.
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    public static int chunkX(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int chunkZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Key of the chunk holding the block.
+     */
+    public static long chunkKeyOf(int x, int z) {
+        return chunkKey(Math.floorDiv(x, 16), Math.floorDiv(z, 16));
+    }
+
+    public static int flags(boolean active, boolean playerEmulation, boolean keepLoaded) {
+        return (active ? ACTIVE : 0) | (playerEmulation ? PLAYER_EMULATION : 0) | (keepLoaded ? KEEP_LOADED : 0);
+    }
+}
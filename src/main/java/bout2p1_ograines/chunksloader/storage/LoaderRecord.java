@@ -0,0 +1,16 @@
+package bout2p1_ograines.chunksloader.storage;
+
+/**
+ * Immutable persisted form of a single chunk loader. {@code keepLoaded} marks a loader
+ * that only keeps its area loaded instead of ticking it.
+ */
+public record LoaderRecord(
+    int x,
+    int y,
+    int z,
+    boolean active,
+    boolean playerEmulation,
+    String simulatedPlayerName,
+    boolean keepLoaded
+) {
+}
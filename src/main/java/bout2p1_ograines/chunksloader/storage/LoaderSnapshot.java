@@ -0,0 +1,33 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable copy of every persisted chunk loader, grouped by world. Snapshots are
+ * captured on the main thread and may be handed to background writers safely.
+ */
+public record LoaderSnapshot(Map<UUID, List<LoaderRecord>> worlds) {
+
+    public LoaderSnapshot {
+        Map<UUID, List<LoaderRecord>> copy = new HashMap<>();
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : worlds.entrySet()) {
+            copy.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        worlds = Map.copyOf(copy);
+    }
+
+    public static LoaderSnapshot empty() {
+        return new LoaderSnapshot(Map.of());
+    }
+
+    public int loaderCount() {
+        int count = 0;
+        for (List<LoaderRecord> records : worlds.values()) {
+            count += records.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,289 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of loader mutations stored next to the binary snapshots.
+ * <p>
+ * Each entry is framed as {@code int length, payload, int CRC32(payload)}. Replay
+ * stops at the first torn or corrupt frame and truncates the file there, so a crash
+ * loses at most the batch that was being written. Appends and resets must happen on
+ * a single thread.
+ */
+public final class MutationJournal {
+    public static final String FILE_NAME = "journal.log";
+
+    private static final JournalEntry.Operation[] OPERATIONS = JournalEntry.Operation.values();
+
+    private final Logger logger;
+    private final Path path;
+    private final AtomicLong size = new AtomicLong();
+    private FileChannel channel;
+
+    public MutationJournal(Logger logger, File dataFolder) {
+        this(logger, dataFolder, FILE_NAME);
+    }
+
+    public MutationJournal(Logger logger, File dataFolder, String fileName) {
+        this.logger = logger;
+        this.path = new File(new File(dataFolder, BinaryLoaderStorage.DIRECTORY_NAME), fileName).toPath();
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Reads every intact journal entry, grouped by world in the order they were written.
+     */
+    public Map<UUID, List<JournalEntry>> read() throws IOException {
+        Map<UUID, List<JournalEntry>> entries = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            size.set(0L);
+            return entries;
+        }
+        byte[] content = Files.readAllBytes(path);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int validLength = 0;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length <= 0 || buffer.remaining() < length + Integer.BYTES) {
+                break;
+            }
+            crc.reset();
+            crc.update(content, buffer.position(), length);
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                break;
+            }
+            JournalEntry entry;
+            try {
+                entry = decode(payload);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IOException exception) {
+                break;
+            }
+            entries.computeIfAbsent(entry.worldId(), id -> new ArrayList<>()).add(entry);
+            validLength = buffer.position();
+        }
+
+        if (validLength < content.length) {
+            logger.warning("Discarding " + (content.length - validLength) + " byte(s) of incomplete journal data in " + path.getFileName() + ".");
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+            }
+        }
+        size.set(validLength);
+        return entries;
+    }
+
+    /**
+     * Applies one world's journal entries on top of that world's stored loaders.
+     */
+    public static List<LoaderRecord> apply(List<LoaderRecord> base, List<JournalEntry> entries) {
+        Map<Long, LoaderRecord> records = new LinkedHashMap<>();
+        for (LoaderRecord record : base) {
+            records.put(LoaderEncoding.pack(record.x(), record.y(), record.z()), record);
+        }
+        for (JournalEntry entry : entries) {
+            apply(records, entry);
+        }
+        return new ArrayList<>(records.values());
+    }
+
+    /**
+     * Appends a batch of entries with a single write and forces it to disk.
+     */
+    public void append(List<JournalEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        byte[] frames = frame(entries);
+        FileChannel channel = openChannel();
+        ByteBuffer buffer = ByteBuffer.wrap(frames);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        size.addAndGet(frames.length);
+    }
+
+    /**
+     * Replaces the whole journal with the given entries. The new content is written
+     * to a temporary file first and moved over the journal, so a crash leaves either
+     * the old or the new entries.
+     */
+    public void rewrite(List<JournalEntry> entries) throws IOException {
+        close();
+        byte[] frames = frame(entries);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.createDirectories(path.getParent());
+        try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(frames);
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+            output.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        size.set(frames.length);
+    }
+
+    /**
+     * Empties the journal once its entries have been folded into a snapshot.
+     */
+    public void reset() throws IOException {
+        FileChannel channel = openChannel();
+        channel.truncate(0L);
+        channel.force(false);
+        size.set(0L);
+    }
+
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException exception) {
+            logger.warning("Unable to close " + path.getFileName() + ": " + exception.getMessage());
+        }
+        channel = null;
+    }
+
+    private static byte[] frame(List<JournalEntry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 48);
+        DataOutputStream output = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        for (JournalEntry entry : entries) {
+            byte[] payload = encode(entry);
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.writeInt((int) crc.getValue());
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private static void apply(Map<Long, LoaderRecord> records, JournalEntry entry) {
+        long key = LoaderEncoding.pack(entry.x(), entry.y(), entry.z());
+        if (entry.operation() == JournalEntry.Operation.ADD) {
+            records.put(key, new LoaderRecord(entry.x(), entry.y(), entry.z(),
+                entry.active(), entry.playerEmulation(), entry.simulatedPlayerName(), entry.keepLoaded()));
+            return;
+        }
+        LoaderRecord current = records.get(key);
+        if (current == null) {
+            return;
+        }
+        LoaderRecord updated = switch (entry.operation()) {
+            case REMOVE -> null;
+            case ACTIVATE, DEACTIVATE -> new LoaderRecord(current.x(), current.y(), current.z(),
+                entry.operation() == JournalEntry.Operation.ACTIVATE, current.playerEmulation(), current.simulatedPlayerName(),
+                current.keepLoaded());
+            case EMULATION_ON, EMULATION_OFF -> new LoaderRecord(current.x(), current.y(), current.z(),
+                current.active(), entry.operation() == JournalEntry.Operation.EMULATION_ON, current.simulatedPlayerName(),
+                current.keepLoaded());
+            case NAME -> new LoaderRecord(current.x(), current.y(), current.z(),
+                current.active(), current.playerEmulation(), entry.simulatedPlayerName(), current.keepLoaded());
+            case TIER_TICKING, TIER_LOADED -> new LoaderRecord(current.x(), current.y(), current.z(),
+                current.active(), current.playerEmulation(), current.simulatedPlayerName(),
+                entry.operation() == JournalEntry.Operation.TIER_LOADED);
+            case ADD -> current;
+        };
+        if (updated == null) {
+            records.remove(key);
+        } else {
+            records.put(key, updated);
+        }
+    }
+
+    private static byte[] encode(JournalEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(40);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(entry.operation().ordinal());
+        output.writeLong(entry.worldId().getMostSignificantBits());
+        output.writeLong(entry.worldId().getLeastSignificantBits());
+        output.writeLong(LoaderEncoding.pack(entry.x(), entry.y(), entry.z()));
+        if (entry.operation() == JournalEntry.Operation.ADD) {
+            output.writeByte(LoaderEncoding.flags(entry.active(), entry.playerEmulation(), entry.keepLoaded()));
+        }
+        if (entry.operation() == JournalEntry.Operation.ADD || entry.operation() == JournalEntry.Operation.NAME) {
+            String name = entry.simulatedPlayerName();
+            if (name == null) {
+                output.writeShort(-1);
+            } else {
+                byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+                output.writeShort(encoded.length);
+                output.write(encoded);
+            }
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static JournalEntry decode(ByteBuffer payload) throws IOException {
+        int ordinal = payload.get();
+        if (ordinal < 0 || ordinal >= OPERATIONS.length) {
+            throw new IOException("unknown journal operation " + ordinal);
+        }
+        JournalEntry.Operation operation = OPERATIONS[ordinal];
+        UUID worldId = new UUID(payload.getLong(), payload.getLong());
+        long packed = payload.getLong();
+        int flags = 0;
+        if (operation == JournalEntry.Operation.ADD) {
+            flags = payload.get();
+        }
+        String name = null;
+        if (operation == JournalEntry.Operation.ADD || operation == JournalEntry.Operation.NAME) {
+            int length = payload.getShort();
+            if (length >= 0) {
+                byte[] encoded = new byte[length];
+                payload.get(encoded);
+                name = new String(encoded, StandardCharsets.UTF_8);
+            }
+        }
+        return new JournalEntry(
+            operation,
+            worldId,
+            LoaderEncoding.unpackX(packed),
+            LoaderEncoding.unpackY(packed),
+            LoaderEncoding.unpackZ(packed),
+            (flags & LoaderEncoding.ACTIVE) != 0,
+            (flags & LoaderEncoding.PLAYER_EMULATION) != 0,
+            name,
+            (flags & LoaderEncoding.KEEP_LOADED) != 0
+        );
+    }
+}
@@ -0,0 +1,362 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Stores chunk loaders in an embedded SQLite database ({@code chunkloaders.db}).
+ * <p>
+ * Every mutation becomes a single-row upsert, update or delete, applied in one
+ * transaction per flushed batch. The table is indexed by world and chunk
+ * coordinates so ad-hoc queries can be answered from the database on any thread
+ * through {@link #queryArea(UUID, int, int, int)} and {@link #countByWorld()},
+ * which open their own read connection. The first start migrates the loaders found
+ * in the binary storage (which in turn migrates {@code chunkloaders.yml}).
+ */
+public final class SqliteStorageBackend implements StorageBackend {
+    public static final String FILE_NAME = "chunkloaders.db";
+
+    private static final int SCHEMA_VERSION = 2;
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final String UPSERT = "INSERT INTO loaders (world, x, y, z, chunk_x, chunk_z, active, player, player_name, keep_loaded) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT (world, x, y, z) DO UPDATE SET active = excluded.active, player = excluded.player, "
+        + "player_name = excluded.player_name, keep_loaded = excluded.keep_loaded";
+    private static final String DELETE = "DELETE FROM loaders WHERE world = ? AND x = ? AND y = ? AND z = ?";
+    private static final String UPDATE_ACTIVE = "UPDATE loaders SET active = ? WHERE world = ? AND x = ? AND y = ? AND z = ?";
+    private static final String UPDATE_PLAYER = "UPDATE loaders SET player = ? WHERE world = ? AND x = ? AND y = ? AND z = ?";
+    private static final String UPDATE_NAME = "UPDATE loaders SET player_name = ? WHERE world = ? AND x = ? AND y = ? AND z = ?";
+    private static final String UPDATE_TIER = "UPDATE loaders SET keep_loaded = ? WHERE world = ? AND x = ? AND y = ? AND z = ?";
+
+    private final Logger logger;
+    private final File dataFolder;
+    private final String url;
+    private Connection connection;
+    private Connection reader;
+
+    public SqliteStorageBackend(Logger logger, File dataFolder) {
+        this.logger = logger;
+        this.dataFolder = dataFolder;
+        this.url = "jdbc:sqlite:" + new File(dataFolder, FILE_NAME).getAbsolutePath();
+    }
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+
+    /**
+     * Opens the database, creates or upgrades the schema and migrates the binary
+     * storage on the first start. Fails when no SQLite driver is available.
+     */
+    @Override
+    public void open() throws IOException {
+        try {
+            connection = DriverManager.getConnection(url);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS loaders ("
+                    + "world TEXT NOT NULL, "
+                    + "x INTEGER NOT NULL, "
+                    + "y INTEGER NOT NULL, "
+                    + "z INTEGER NOT NULL, "
+                    + "chunk_x INTEGER NOT NULL, "
+                    + "chunk_z INTEGER NOT NULL, "
+                    + "active INTEGER NOT NULL, "
+                    + "player INTEGER NOT NULL, "
+                    + "player_name TEXT, "
+                    + "keep_loaded INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (world, x, y, z))");
+                statement.execute("CREATE INDEX IF NOT EXISTS loaders_world_chunk ON loaders (world, chunk_x, chunk_z)");
+            }
+            int schemaVersion = schemaVersion();
+            if (schemaVersion < 1) {
+                migrate();
+            } else if (schemaVersion < SCHEMA_VERSION) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ALTER TABLE loaders ADD COLUMN keep_loaded INTEGER NOT NULL DEFAULT 0");
+                    statement.execute("PRAGMA user_version=" + SCHEMA_VERSION);
+                }
+            }
+            reader = DriverManager.getConnection(url);
+        } catch (SQLException exception) {
+            close();
+            throw new IOException(exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Reads a world through a dedicated connection, so the main thread never waits on
+     * a transaction of the writer thread.
+     */
+    @Override
+    public List<LoaderRecord> loadWorld(UUID worldId) {
+        List<LoaderRecord> records = new ArrayList<>();
+        try (PreparedStatement statement = reader.prepareStatement(
+            "SELECT x, y, z, active, player, player_name, keep_loaded FROM loaders WHERE world = ?")) {
+            statement.setString(1, worldId.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    records.add(readRecord(results, 1));
+                }
+            }
+        } catch (SQLException exception) {
+            logger.severe("Unable to read chunk loaders from " + FILE_NAME + ": " + exception.getMessage());
+            return List.of();
+        }
+        return records;
+    }
+
+    @Override
+    public void persist(List<JournalEntry> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+                 PreparedStatement delete = connection.prepareStatement(DELETE);
+                 PreparedStatement updateActive = connection.prepareStatement(UPDATE_ACTIVE);
+                 PreparedStatement updatePlayer = connection.prepareStatement(UPDATE_PLAYER);
+                 PreparedStatement updateName = connection.prepareStatement(UPDATE_NAME);
+                 PreparedStatement updateTier = connection.prepareStatement(UPDATE_TIER)) {
+                for (JournalEntry entry : batch) {
+                    switch (entry.operation()) {
+                        case ADD -> {
+                            bindRecord(upsert, entry.worldId(), new LoaderRecord(entry.x(), entry.y(), entry.z(),
+                                entry.active(), entry.playerEmulation(), entry.simulatedPlayerName(), entry.keepLoaded()));
+                            upsert.executeUpdate();
+                        }
+                        case REMOVE -> {
+                            bindKey(delete, 1, entry);
+                            delete.executeUpdate();
+                        }
+                        case ACTIVATE, DEACTIVATE -> {
+                            updateActive.setInt(1, entry.operation() == JournalEntry.Operation.ACTIVATE ? 1 : 0);
+                            bindKey(updateActive, 2, entry);
+                            updateActive.executeUpdate();
+                        }
+                        case EMULATION_ON, EMULATION_OFF -> {
+                            updatePlayer.setInt(1, entry.operation() == JournalEntry.Operation.EMULATION_ON ? 1 : 0);
+                            bindKey(updatePlayer, 2, entry);
+                            updatePlayer.executeUpdate();
+                        }
+                        case NAME -> {
+                            updateName.setString(1, entry.simulatedPlayerName());
+                            bindKey(updateName, 2, entry);
+                            updateName.executeUpdate();
+                        }
+                        case TIER_TICKING, TIER_LOADED -> {
+                            updateTier.setInt(1, entry.operation() == JournalEntry.Operation.TIER_LOADED ? 1 : 0);
+                            bindKey(updateTier, 2, entry);
+                            updateTier.executeUpdate();
+                        }
+                    }
+                }
+            }
+            connection.commit();
+        } catch (SQLException exception) {
+            rollback();
+            throw new IOException(exception.getMessage(), exception);
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    @Override
+    public void saveWorld(UUID worldId, List<LoaderRecord> records) throws IOException {
+        compact(new LoaderSnapshot(Map.of(worldId, records)));
+    }
+
+    @Override
+    public boolean shouldCompact(boolean shutdown) {
+        return false;
+    }
+
+    @Override
+    public void compact(LoaderSnapshot snapshot) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM loaders WHERE world = ?");
+                 PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+                int pending = 0;
+                for (Map.Entry<UUID, List<LoaderRecord>> entry : snapshot.worlds().entrySet()) {
+                    delete.setString(1, entry.getKey().toString());
+                    delete.executeUpdate();
+                    for (LoaderRecord record : entry.getValue()) {
+                        bindRecord(upsert, entry.getKey(), record);
+                        upsert.addBatch();
+                        if (++pending >= INSERT_BATCH_SIZE) {
+                            upsert.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                }
+                upsert.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException exception) {
+            rollback();
+            throw new IOException(exception.getMessage(), exception);
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    @Override
+    public void close() {
+        close(reader);
+        close(connection);
+        reader = null;
+        connection = null;
+    }
+
+    /**
+     * Returns the loaders of {@code worldId} whose chunk lies within {@code radius}
+     * chunks of the given chunk. Safe to call from any thread.
+     */
+    public List<LoaderRecord> queryArea(UUID worldId, int chunkX, int chunkZ, int radius) throws SQLException {
+        List<LoaderRecord> records = new ArrayList<>();
+        try (Connection reader = DriverManager.getConnection(url);
+             PreparedStatement statement = reader.prepareStatement("SELECT x, y, z, active, player, player_name, keep_loaded FROM loaders "
+                 + "WHERE world = ? AND chunk_x BETWEEN ? AND ? AND chunk_z BETWEEN ? AND ? ORDER BY chunk_x, chunk_z")) {
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, chunkX - radius);
+            statement.setInt(3, chunkX + radius);
+            statement.setInt(4, chunkZ - radius);
+            statement.setInt(5, chunkZ + radius);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    records.add(readRecord(results, 1));
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Counts stored loaders per world. Safe to call from any thread.
+     */
+    public Map<UUID, Integer> countByWorld() throws SQLException {
+        Map<UUID, Integer> counts = new HashMap<>();
+        try (Connection reader = DriverManager.getConnection(url);
+             Statement statement = reader.createStatement();
+             ResultSet results = statement.executeQuery("SELECT world, COUNT(*) FROM loaders GROUP BY world")) {
+            while (results.next()) {
+                try {
+                    counts.put(UUID.fromString(results.getString(1)), results.getInt(2));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        }
+        return counts;
+    }
+
+    private void migrate() throws SQLException {
+        BinaryLoaderStorage previous = new BinaryLoaderStorage(logger, dataFolder, Long.MAX_VALUE);
+        LoaderSnapshot snapshot;
+        try {
+            previous.open();
+            snapshot = previous.loadAll();
+        } catch (IOException exception) {
+            throw new SQLException("unable to read the binary storage: " + exception.getMessage(), exception);
+        } finally {
+            previous.close();
+        }
+        try {
+            compact(snapshot);
+        } catch (IOException exception) {
+            throw new SQLException("unable to migrate chunk loaders: " + exception.getMessage(), exception);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA user_version=" + SCHEMA_VERSION);
+        }
+        if (snapshot.loaderCount() > 0) {
+            logger.info("Migrated " + snapshot.loaderCount() + " chunk loader(s) to " + FILE_NAME + ".");
+        }
+    }
+
+    private int schemaVersion() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("PRAGMA user_version")) {
+            return results.next() ? results.getInt(1) : 0;
+        }
+    }
+
+    private static LoaderRecord readRecord(ResultSet results, int offset) throws SQLException {
+        return new LoaderRecord(
+            results.getInt(offset),
+            results.getInt(offset + 1),
+            results.getInt(offset + 2),
+            results.getInt(offset + 3) != 0,
+            results.getInt(offset + 4) != 0,
+            results.getString(offset + 5),
+            results.getInt(offset + 6) != 0
+        );
+    }
+
+    private static void bindRecord(PreparedStatement statement, UUID worldId, LoaderRecord record) throws SQLException {
+        statement.setString(1, worldId.toString());
+        statement.setInt(2, record.x());
+        statement.setInt(3, record.y());
+        statement.setInt(4, record.z());
+        statement.setInt(5, Math.floorDiv(record.x(), 16));
+        statement.setInt(6, Math.floorDiv(record.z(), 16));
+        statement.setInt(7, record.active() ? 1 : 0);
+        statement.setInt(8, record.playerEmulation() ? 1 : 0);
+        if (record.simulatedPlayerName() == null) {
+            statement.setNull(9, Types.VARCHAR);
+        } else {
+            statement.setString(9, record.simulatedPlayerName());
+        }
+        statement.setInt(10, record.keepLoaded() ? 1 : 0);
+    }
+
+    private static void bindKey(PreparedStatement statement, int offset, JournalEntry entry) throws SQLException {
+        statement.setString(offset, entry.worldId().toString());
+        statement.setInt(offset + 1, entry.x());
+        statement.setInt(offset + 2, entry.y());
+        statement.setInt(offset + 3, entry.z());
+    }
+
+    private void close(Connection target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.close();
+        } catch (SQLException exception) {
+            logger.warning("Unable to close " + FILE_NAME + ": " + exception.getMessage());
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException exception) {
+            logger.warning("Unable to roll back " + FILE_NAME + " transaction: " + exception.getMessage());
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException exception) {
+            logger.warning("Unable to restore auto-commit on " + FILE_NAME + ": " + exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persistence strategy for chunk loaders.
+ * <p>
+ * Loaders are read one world at a time through {@link #loadWorld(UUID)}, so only
+ * loaded worlds are kept in memory. {@link #persist(List)}, {@link #saveWorld(UUID, List)}
+ * and {@link #compact(LoaderSnapshot)} are invoked from the single
+ * {@link WriteBehindWriter} thread (or from the main thread once that writer has
+ * been shut down), so implementations do not need to synchronise between them.
+ * {@link #stage(JournalEntry)} and {@link #shouldCompact(boolean)} are called from
+ * the main thread. {@link #loadWorld(UUID)} is called from the main thread or, while
+ * the plugin enables, from an asynchronous task.
+ */
+public interface StorageBackend {
+
+    String getName();
+
+    /**
+     * Prepares the storage, migrating older formats and recovering from an unclean
+     * shutdown when needed. Called once before any other method.
+     */
+    void open() throws IOException;
+
+    /**
+     * Reads the stored loaders of a single world.
+     */
+    List<LoaderRecord> loadWorld(UUID worldId);
+
+    /**
+     * Receives each mutation on the main thread as soon as it is recorded, before it
+     * is batched for {@link #persist(List)}. Backends that store loaders in world data
+     * apply it here.
+     */
+    default void stage(JournalEntry entry) {
+    }
+
+    /**
+     * Persists a batch of mutations recorded since the previous batch.
+     */
+    void persist(List<JournalEntry> batch) throws IOException;
+
+    /**
+     * Replaces the stored loaders of a world that is being released from memory.
+     */
+    void saveWorld(UUID worldId, List<LoaderRecord> records) throws IOException;
+
+    /**
+     * Whether the backend wants a full snapshot written through {@link #compact(LoaderSnapshot)}.
+     *
+     * @param shutdown {@code true} when the plugin is stopping
+     */
+    boolean shouldCompact(boolean shutdown);
+
+    /**
+     * Replaces the stored loaders of every world contained in {@code snapshot}.
+     * Worlds missing from the snapshot are not loaded and must be left untouched.
+     */
+    void compact(LoaderSnapshot snapshot) throws IOException;
+
+    /**
+     * Size, in bytes, of data persisted since the last compaction.
+     */
+    default long getBacklogBytes() {
+        return 0L;
+    }
+
+    void close();
+}
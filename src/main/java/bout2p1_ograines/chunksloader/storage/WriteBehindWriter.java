@@ -0,0 +1,310 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Persists loader mutations from a background thread.
+ * <p>
+ * Mutations are buffered as {@link JournalEntry journal entries} on the main thread.
+ * A periodic main-thread task hands the buffered batch to a single writer thread,
+ * which passes it to the {@link StorageBackend}. When the backend asks for it, the
+ * task also captures an immutable {@link LoaderSnapshot} and the writer compacts
+ * the backend with it. Because the writer runs its tasks in order, every batch
+ * persisted before a snapshot was captured is contained in that snapshot.
+ * <p>
+ * Snapshots only cover loaded worlds. A world that unloads is written on its own
+ * through {@link #saveWorld(UUID, List)}; until that write succeeds its loaders stay
+ * available through {@link #getPendingWorldSave(UUID)} and compaction is held back,
+ * so the backend never drops mutations that were only recorded for that world.
+ */
+public final class WriteBehindWriter {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30L;
+
+    private final Plugin plugin;
+    private final Supplier<LoaderSnapshot> snapshotSupplier;
+    private final StorageBackend backend;
+    private final ExecutorService executor;
+    private final Map<UUID, List<LoaderRecord>> pendingWorldSaves = new ConcurrentHashMap<>();
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicLong completedFlushes = new AtomicLong();
+    private final AtomicLong completedCompactions = new AtomicLong();
+    private final AtomicLong failedSaves = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private volatile long lastCompactionNanos;
+    private volatile boolean compactionRequested;
+    private volatile boolean compactionQueued;
+    private boolean paused;
+
+    private List<JournalEntry> pending = new ArrayList<>();
+    private BukkitTask task;
+
+    public WriteBehindWriter(Plugin plugin, Supplier<LoaderSnapshot> snapshotSupplier, StorageBackend backend) {
+        this.plugin = plugin;
+        this.snapshotSupplier = snapshotSupplier;
+        this.backend = backend;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, plugin.getName() + "-storage-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(long intervalTicks) {
+        if (task != null) {
+            return;
+        }
+        long interval = Math.max(1L, intervalTicks);
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, interval, interval);
+    }
+
+    public void record(JournalEntry entry) {
+        backend.stage(entry);
+        pending.add(entry);
+    }
+
+    /**
+     * Writes the loaders of a world that is being unloaded. Mutations recorded before
+     * this call are handed to the writer first, so they are never applied on top of
+     * the saved world.
+     */
+    public void saveWorld(UUID worldId, List<LoaderRecord> records) {
+        flushPending();
+        List<LoaderRecord> copy = List.copyOf(records);
+        pendingWorldSaves.put(worldId, copy);
+        if (!submit(() -> writeWorld(worldId, copy))) {
+            compactionRequested = true;
+        }
+    }
+
+    /**
+     * Returns the loaders of a world whose unload save has not completed yet, or
+     * {@code null} when the backend is up to date for that world.
+     */
+    public List<LoaderRecord> getPendingWorldSave(UUID worldId) {
+        return pendingWorldSaves.get(worldId);
+    }
+
+    /**
+     * Holds buffered mutations back until {@link #resume()} is called, so a bulk
+     * change reaches the backend in a single flush.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    /**
+     * Compacts the backend with a fresh snapshot on the next flush.
+     */
+    public void requestCompaction() {
+        compactionRequested = true;
+    }
+
+    /**
+     * Stops the background writer and synchronously persists anything that has not
+     * been written yet, compacting the backend if it asks for it. Must be called from
+     * the main thread.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out waiting for the chunk loader storage writer to finish.");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.isEmpty()) {
+            List<JournalEntry> batch = pending;
+            pending = new ArrayList<>();
+            persist(batch);
+        }
+        if (compactionRequested || backend.shouldCompact(true)) {
+            compact(snapshotSupplier.get());
+        }
+        backend.close();
+    }
+
+    public StorageBackend getBackend() {
+        return backend;
+    }
+
+    public int getPendingEntries() {
+        return pending.size();
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks.get();
+    }
+
+    public long getBacklogBytes() {
+        return backend.getBacklogBytes();
+    }
+
+    public long getCompletedFlushes() {
+        return completedFlushes.get();
+    }
+
+    public long getCompletedCompactions() {
+        return completedCompactions.get();
+    }
+
+    public long getFailedSaves() {
+        return failedSaves.get();
+    }
+
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    public long getAverageFlushNanos() {
+        long flushes = completedFlushes.get();
+        return flushes == 0 ? 0L : totalFlushNanos.get() / flushes;
+    }
+
+    public long getLastCompactionNanos() {
+        return lastCompactionNanos;
+    }
+
+    private void tick() {
+        if (paused) {
+            return;
+        }
+        flushPending();
+        if (compactionQueued) {
+            return;
+        }
+        if (compactionRequested || backend.shouldCompact(false)) {
+            LoaderSnapshot snapshot = snapshotSupplier.get();
+            compactionRequested = false;
+            compactionQueued = true;
+            if (!submit(() -> {
+                try {
+                    compact(snapshot);
+                } finally {
+                    compactionQueued = false;
+                }
+            })) {
+                compactionQueued = false;
+                compactionRequested = true;
+            }
+        }
+    }
+
+    private void flushPending() {
+        if (!pending.isEmpty()) {
+            List<JournalEntry> batch = pending;
+            pending = new ArrayList<>();
+            if (!submit(() -> persist(batch))) {
+                compactionRequested = true;
+            }
+        }
+    }
+
+    private boolean submit(Runnable runnable) {
+        queuedTasks.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    queuedTasks.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RuntimeException exception) {
+            queuedTasks.decrementAndGet();
+            plugin.getLogger().log(Level.WARNING, "Unable to queue chunk loader save", exception);
+            return false;
+        }
+    }
+
+    private void persist(List<JournalEntry> batch) {
+        long start = System.nanoTime();
+        try {
+            backend.persist(batch);
+        } catch (IOException | RuntimeException exception) {
+            failedSaves.incrementAndGet();
+            // The batch never reached the backend, so only a full snapshot can cover it now.
+            compactionRequested = true;
+            plugin.getLogger().severe("Unable to persist chunk loader changes: " + exception.getMessage());
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        lastFlushNanos = elapsed;
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+        totalFlushNanos.addAndGet(elapsed);
+        completedFlushes.incrementAndGet();
+    }
+
+    private boolean writeWorld(UUID worldId, List<LoaderRecord> records) {
+        try {
+            backend.saveWorld(worldId, records);
+        } catch (IOException | RuntimeException exception) {
+            failedSaves.incrementAndGet();
+            compactionRequested = true;
+            plugin.getLogger().severe("Unable to save chunk loaders of world " + worldId + ": " + exception.getMessage());
+            return false;
+        }
+        pendingWorldSaves.remove(worldId, records);
+        return true;
+    }
+
+    private boolean retryWorldSaves() {
+        boolean saved = true;
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : pendingWorldSaves.entrySet()) {
+            saved &= writeWorld(entry.getKey(), entry.getValue());
+        }
+        return saved;
+    }
+
+    private void compact(LoaderSnapshot snapshot) {
+        if (!retryWorldSaves()) {
+            // Compacting now could discard journaled changes of the worlds that failed to save.
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            backend.compact(snapshot);
+        } catch (IOException | RuntimeException exception) {
+            failedSaves.incrementAndGet();
+            compactionRequested = true;
+            plugin.getLogger().severe("Unable to save chunk loaders: " + exception.getMessage());
+            return;
+        }
+        lastCompactionNanos = System.nanoTime() - start;
+        completedCompactions.incrementAndGet();
+    }
+}
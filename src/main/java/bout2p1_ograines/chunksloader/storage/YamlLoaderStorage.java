@@ -0,0 +1,197 @@
+package bout2p1_ograines.chunksloader.storage;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Stores every chunk loader in the legacy {@code chunkloaders.yml} file. Any batch of
+ * mutations marks the file dirty and the whole file is rewritten on the next flush.
+ * Because the format cannot be read one world at a time, the records of every world
+ * stay cached here for the lifetime of the backend.
+ */
+public final class YamlLoaderStorage implements StorageBackend {
+    public static final String FILE_NAME = "chunkloaders.yml";
+
+    private final Logger logger;
+    private final File file;
+    private final Map<UUID, List<LoaderRecord>> worlds = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public YamlLoaderStorage(Logger logger, File dataFolder) {
+        this.logger = logger;
+        this.file = new File(dataFolder, FILE_NAME);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getName() {
+        return "yaml";
+    }
+
+    @Override
+    public void open() {
+        worlds.clear();
+        worlds.putAll(loadAll().worlds());
+    }
+
+    @Override
+    public List<LoaderRecord> loadWorld(UUID worldId) {
+        return worlds.getOrDefault(worldId, List.of());
+    }
+
+    /**
+     * Parses the whole file, independently of the records cached by {@link #open()}.
+     */
+    public LoaderSnapshot loadAll() {
+        if (!file.exists()) {
+            return LoaderSnapshot.empty();
+        }
+
+        FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
+        Map<UUID, List<LoaderRecord>> loaded = new HashMap<>();
+        for (String worldId : configuration.getKeys(false)) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(worldId);
+            } catch (IllegalArgumentException exception) {
+                logger.warning("Ignoring invalid world identifier '" + worldId + "' in " + FILE_NAME);
+                continue;
+            }
+
+            List<?> list = configuration.getList(worldId);
+            if (list == null) {
+                continue;
+            }
+            List<LoaderRecord> records = new ArrayList<>();
+            for (Object entry : list) {
+                if (entry instanceof Map<?, ?> map) {
+                    Integer x = mapValue(map, "x");
+                    Integer y = mapValue(map, "y");
+                    Integer z = mapValue(map, "z");
+                    Boolean active = mapBoolean(map, "active");
+                    Boolean emulatePlayer = mapBoolean(map, "player");
+                    String playerName = mapString(map, "playerName");
+                    String tier = mapString(map, "tier");
+                    if (x != null && y != null && z != null) {
+                        boolean isActive = active == null || active;
+                        boolean emulate = emulatePlayer != null && emulatePlayer;
+                        records.add(new LoaderRecord(x, y, z, isActive, emulate, playerName, "loaded".equals(tier)));
+                    } else {
+                        logger.warning("Ignoring invalid chunk loader entry for world '" + worldId + "' in " + FILE_NAME);
+                    }
+                }
+            }
+            loaded.put(uuid, records);
+        }
+        return new LoaderSnapshot(loaded);
+    }
+
+    @Override
+    public void persist(List<JournalEntry> batch) {
+        if (!batch.isEmpty()) {
+            dirty = true;
+        }
+    }
+
+    @Override
+    public void saveWorld(UUID worldId, List<LoaderRecord> records) throws IOException {
+        merge(new LoaderSnapshot(Map.of(worldId, records)));
+        writeFile();
+    }
+
+    @Override
+    public boolean shouldCompact(boolean shutdown) {
+        return dirty;
+    }
+
+    @Override
+    public void compact(LoaderSnapshot snapshot) throws IOException {
+        dirty = false;
+        merge(snapshot);
+        writeFile();
+    }
+
+    private void merge(LoaderSnapshot snapshot) {
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : snapshot.worlds().entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                worlds.remove(entry.getKey());
+            } else {
+                worlds.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void writeFile() throws IOException {
+        FileConfiguration configuration = new YamlConfiguration();
+        for (Map.Entry<UUID, List<LoaderRecord>> entry : worlds.entrySet()) {
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (LoaderRecord record : entry.getValue()) {
+                Map<String, Object> map = new HashMap<>();
+                map.put("x", record.x());
+                map.put("y", record.y());
+                map.put("z", record.z());
+                map.put("active", record.active());
+                if (record.playerEmulation()) {
+                    map.put("player", true);
+                }
+                if (record.simulatedPlayerName() != null) {
+                    map.put("playerName", record.simulatedPlayerName());
+                }
+                if (record.keepLoaded()) {
+                    map.put("tier", "loaded");
+                }
+                list.add(map);
+            }
+            configuration.set(entry.getKey().toString(), list);
+        }
+        AtomicFiles.write(file.toPath(), configuration.saveToString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Integer mapValue(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        return null;
+    }
+
+    private Boolean mapBoolean(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        if (value instanceof String string) {
+            return Boolean.parseBoolean(string);
+        }
+        if (value instanceof Number number) {
+            return number.intValue() != 0;
+        }
+        return null;
+    }
+
+    private String mapString(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+        if (value == null) {
+            return null;
+        }
+        return String.valueOf(value);
+    }
+}